@@ -0,0 +1,15 @@
+package ru.practicum.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import ru.practicum.replica.ReplicaDataSourceConfig;
+
+// Enabled by spring.datasource.replica.url; without it the auto-configured single datasource is used
+@Configuration
+@ConditionalOnProperty(prefix = "spring.datasource.replica", name = "url")
+public class DataSourceConfig extends ReplicaDataSourceConfig {
+
+    public DataSourceConfig() {
+        super("ewm.replica");
+    }
+}
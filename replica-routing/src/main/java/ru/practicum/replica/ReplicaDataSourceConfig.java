@@ -0,0 +1,63 @@
+package ru.practicum.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+// Primary and replica pools behind a ReplicaRoutingDataSource. A service extends it with its own
+// @Configuration, conditional on spring.datasource.replica.url, and names the prefix of its lag settings.
+public abstract class ReplicaDataSourceConfig {
+    private static final Duration DEFAULT_MAX_LAG = Duration.ofSeconds(5);
+    private static final Duration DEFAULT_CHECK_INTERVAL = Duration.ofSeconds(5);
+
+    private final String prefix;
+
+    protected ReplicaDataSourceConfig(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(DataSourceProperties primaryProperties, Environment environment) {
+        DataSourceProperties properties = Binder.get(environment)
+                .bind("spring.datasource.replica", DataSourceProperties.class)
+                .get();
+        // Credentials default to the primary's
+        if (properties.getUsername() == null) {
+            properties.setUsername(primaryProperties.getUsername());
+            properties.setPassword(primaryProperties.getPassword());
+        }
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource routingDataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                                      @Qualifier("replicaDataSource") DataSource replicaDataSource,
+                                                      Environment environment) {
+        Binder binder = Binder.get(environment);
+        Duration maxLag = binder.bind(prefix + ".max-lag", Duration.class).orElse(DEFAULT_MAX_LAG);
+        Duration checkInterval = binder.bind(prefix + ".check-interval", Duration.class).orElse(DEFAULT_CHECK_INTERVAL);
+        return new ReplicaRoutingDataSource(primaryDataSource, replicaDataSource, maxLag, checkInterval);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+}
@@ -0,0 +1,103 @@
+package ru.practicum.replica;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Read-only transactions go to the replica while its replay lag stays within the tolerance, everything else to the primary.
+// Must sit behind a LazyConnectionDataSourceProxy: the read-only flag is only bound after the transaction has begun.
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+    private static final String LAG_QUERY =
+            "SELECT COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0)";
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final double maxLagSeconds;
+    private final ScheduledExecutorService checker;
+    private volatile boolean replicaUsable;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, Duration maxLag, Duration checkInterval) {
+        this.primary = primary;
+        this.replica = replica;
+        this.maxLagSeconds = maxLag.toMillis() / 1000.0;
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        this.checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::check, 0, checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        checker.shutdownNow();
+    }
+
+    public boolean isReplicaUsable() {
+        return replicaUsable;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return replicaUsable && TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? Route.REPLICA : Route.PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (determineCurrentLookupKey() != Route.REPLICA) {
+            return primary.getConnection();
+        }
+        try {
+            return replica.getConnection();
+        } catch (SQLException e) {
+            markUnusable("недоступна: " + e.getMessage());
+            return primary.getConnection();
+        }
+    }
+
+    private void check() {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout(Math.max(1, (int) Math.ceil(maxLagSeconds)));
+            try (ResultSet resultSet = statement.executeQuery(LAG_QUERY)) {
+                resultSet.next();
+                double lag = resultSet.getDouble(1);
+                if (lag > maxLagSeconds) {
+                    markUnusable("отстаёт на " + lag + " с");
+                } else if (!replicaUsable) {
+                    replicaUsable = true;
+                    log.info("Реплика доступна, отставание {} с", lag);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            markUnusable("недоступна: " + e.getMessage());
+        }
+    }
+
+    private void markUnusable(String reason) {
+        if (replicaUsable) {
+            log.warn("Реплика {}, чтение переключено на основную базу", reason);
+        }
+        replicaUsable = false;
+    }
+
+    private enum Route {
+        PRIMARY,
+        REPLICA
+    }
+}
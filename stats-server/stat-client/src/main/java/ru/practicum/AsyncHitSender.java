@@ -0,0 +1,187 @@
+package ru.practicum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+// Fire-and-forget POSTs on a non-blocking HTTP client: the caller never waits for the stats server.
+// At most maxPending requests are in flight, anything beyond that is handed to the fallback, or dropped and counted without one.
+public class AsyncHitSender implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(AsyncHitSender.class);
+
+    private final String serverUrl;
+    private final String contentType;
+    private final Function<Object, byte[]> encoder;
+    private final Duration timeout;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final int maxPending;
+    private final Semaphore pending;
+    // takes what the server did not accept, may be null
+    private final BiConsumer<String, Object> fallback;
+    // shared with the blocking calls of the client, may be null
+    private final CircuitBreaker circuitBreaker;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    public AsyncHitSender(String serverUrl, String contentType, Function<Object, byte[]> encoder,
+                          int threads, int maxPending, Duration timeout, BiConsumer<String, Object> fallback,
+                          CircuitBreaker circuitBreaker) {
+        this.serverUrl = serverUrl;
+        this.contentType = contentType;
+        this.encoder = encoder;
+        this.timeout = timeout;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "stat-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .executor(executor)
+                .build();
+        this.maxPending = maxPending;
+        this.pending = new Semaphore(maxPending);
+        this.fallback = fallback;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public void send(HitDto hitDto) {
+        if (!pending.tryAcquire()) {
+            reject(Utils.HIT, hitDto);
+            return;
+        }
+        send(Utils.HIT, hitDto);
+    }
+
+    // Called from the batcher's own thread, so it may wait for a free slot instead of dropping right away
+    public void sendBatch(List<HitDto> hitDtos) {
+        sendWaiting(Utils.HITS_BATCH, hitDtos);
+    }
+
+    // Called from the counter's own thread, same as batches
+    public void sendCounts(List<HitCountDto> countDtos) {
+        sendWaiting(Utils.HITS_COUNTS, countDtos);
+    }
+
+    private void sendWaiting(String path, Object body) {
+        try {
+            if (!pending.tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                reject(path, body);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reject(path, body);
+            return;
+        }
+        send(path, body);
+    }
+
+    // The caller holds a pending permit
+    private void send(String path, Object body) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(serverUrl + path))
+                    .timeout(timeout)
+                    .header(HttpHeaders.CONTENT_TYPE, contentType)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(encoder.apply(body)))
+                    .build();
+        } catch (RuntimeException e) {
+            pending.release();
+            errors.increment();
+            log.warn("Не удалось подготовить запрос к серверу статистики", e);
+            return;
+        }
+        // while the breaker is open nothing is sent, the body goes straight to the fallback
+        if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+            pending.release();
+            reject(path, body);
+            return;
+        }
+        long started = System.nanoTime();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            if (circuitBreaker != null) {
+                // 429 limits one visitor ip and must not stop the stats of everyone else
+                circuitBreaker.onResult(error != null || response.statusCode() >= 500, System.nanoTime() - started);
+            }
+            if (error != null) {
+                errors.increment();
+                log.debug("Сервер статистики недоступен: {}", error.toString());
+                reject(path, body);
+            } else if (response.statusCode() >= 300) {
+                errors.increment();
+                log.debug("Сервер статистики ответил {}", response.statusCode());
+                // client errors would be refused again and a replayed 429 would get around the limiter,
+                // only server errors are worth keeping
+                if (response.statusCode() >= 500) {
+                    reject(path, body);
+                } else {
+                    dropped.increment();
+                }
+            } else {
+                sent.increment();
+            }
+            pending.release();
+        });
+    }
+
+    private void reject(String path, Object body) {
+        if (fallback == null) {
+            dropped.increment();
+            return;
+        }
+        try {
+            fallback.accept(path, body);
+        } catch (RuntimeException e) {
+            dropped.increment();
+            log.warn("Не удалось сохранить неотправленные просмотры", e);
+        }
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public int getPending() {
+        return maxPending - pending.availablePermits();
+    }
+
+    // Waits up to the request timeout for the requests still in flight
+    @Override
+    public void close() {
+        try {
+            if (!pending.tryAcquire(maxPending, timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Остались неотправленные запросы к серверу статистики: {}", getPending());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdown();
+    }
+}
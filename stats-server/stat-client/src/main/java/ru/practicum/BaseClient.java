@@ -11,9 +11,33 @@ import java.util.Map;
 
 public class BaseClient {
     protected final RestTemplate rest;
+    private final MediaType mediaType;
+    // null disables the breaker
+    private final CircuitBreaker circuitBreaker;
+    // null disables the bulkhead
+    private final Bulkhead bulkhead;
 
     public BaseClient(RestTemplate rest) {
+        this(rest, MediaType.APPLICATION_JSON);
+    }
+
+    public BaseClient(RestTemplate rest, MediaType mediaType) {
+        this(rest, mediaType, null, null);
+    }
+
+    public BaseClient(RestTemplate rest, MediaType mediaType, CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
         this.rest = rest;
+        this.mediaType = mediaType;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
     }
 
 
@@ -37,7 +61,35 @@ public class BaseClient {
         return makeAndSendRequest(HttpMethod.POST, path, parameters, body);
     }
 
+    // The bulkhead is taken before the breaker, so a half-open probe slot is never held by a call that does not run
     private <T> ResponseEntity<Object> makeAndSendRequest(HttpMethod method, String path, @Nullable Map<String, Object> parameters, @Nullable T body) {
+        if (bulkhead != null && !bulkhead.tryAcquire()) {
+            throw new StatsUnavailableException("Превышено число одновременных запросов к серверу статистики");
+        }
+        try {
+            if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+                throw new StatsUnavailableException("Сервер статистики недоступен, запросы приостановлены");
+            }
+            long started = System.nanoTime();
+            boolean failed = true;
+            try {
+                ResponseEntity<Object> response = exchange(method, path, parameters, body);
+                // 429 is the server limiting one visitor ip, it says nothing about the server's health
+                failed = response.getStatusCode().is5xxServerError();
+                return response;
+            } finally {
+                if (circuitBreaker != null) {
+                    circuitBreaker.onResult(failed, System.nanoTime() - started);
+                }
+            }
+        } finally {
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    private <T> ResponseEntity<Object> exchange(HttpMethod method, String path, @Nullable Map<String, Object> parameters, @Nullable T body) {
         HttpEntity<T> requestEntity = new HttpEntity<>(body, defaultHeaders());
 
         ResponseEntity<Object> ewmServerResponse;
@@ -55,8 +107,11 @@ public class BaseClient {
 
     private HttpHeaders defaultHeaders() {
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+        headers.setContentType(mediaType);
+        // JSON stays acceptable so that error bodies, which are never binary, can still be read
+        headers.setAccept(mediaType.equals(MediaType.APPLICATION_JSON)
+                ? List.of(MediaType.APPLICATION_JSON)
+                : List.of(mediaType, MediaType.APPLICATION_JSON));
         return headers;
     }
 
@@ -0,0 +1,50 @@
+package ru.practicum;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Caps the request threads that may wait on the stats server at once; the rest fail after maxWait instead of piling up
+public class Bulkhead {
+    private final int maxConcurrent;
+    private final long maxWaitNanos;
+    private final Semaphore permits;
+    private final LongAdder rejected = new LongAdder();
+
+    public Bulkhead(int maxConcurrent, Duration maxWait) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    public boolean tryAcquire() {
+        boolean acquired;
+        try {
+            acquired = maxWaitNanos > 0
+                    ? permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)
+                    : permits.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.increment();
+        }
+        return acquired;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public Map<String, Object> describe() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("maxConcurrent", maxConcurrent);
+        description.put("active", maxConcurrent - permits.availablePermits());
+        description.put("rejected", rejected.sum());
+        return description;
+    }
+}
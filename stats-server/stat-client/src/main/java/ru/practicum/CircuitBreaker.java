@@ -0,0 +1,153 @@
+package ru.practicum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Count-based breaker over the last windowSize calls: it opens when enough of them failed or were slow,
+// rejects everything for openDuration, then lets probeCalls through and closes only if all of them succeed.
+public class CircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int minCalls;
+    private final double failureRate;
+    private final double slowRate;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int probeCalls;
+    // outcomes of the last calls as FAILED | SLOW bits, a ring over the window
+    private final byte[] window;
+    private int windowNext;
+    private int windowCount;
+    private int windowFailures;
+    private int windowSlow;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probes;
+    private int probeSuccesses;
+    private long calls;
+    private long failures;
+    private long slowCalls;
+    private long rejected;
+    private long opened;
+
+    public CircuitBreaker(int windowSize, int minCalls, double failureRate, double slowRate, Duration slowCall,
+                          Duration openDuration, int probeCalls) {
+        this.window = new byte[Math.max(1, windowSize)];
+        this.minCalls = Math.max(1, Math.min(minCalls, window.length));
+        this.failureRate = failureRate;
+        this.slowRate = slowRate;
+        this.slowCallNanos = slowCall.toNanos();
+        this.openNanos = openDuration.toNanos();
+        this.probeCalls = Math.max(1, probeCalls);
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                rejected++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probes = 0;
+            probeSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probes >= probeCalls) {
+                rejected++;
+                return false;
+            }
+            probes++;
+        }
+        return true;
+    }
+
+    // Every permitted call reports exactly once, with its duration
+    public synchronized void onResult(boolean failed, long nanos) {
+        boolean slow = nanos >= slowCallNanos;
+        calls++;
+        failures += failed ? 1 : 0;
+        slowCalls += slow ? 1 : 0;
+        if (state == State.HALF_OPEN) {
+            if (failed || slow) {
+                open();
+            } else if (++probeSuccesses >= probeCalls) {
+                close();
+            }
+            return;
+        }
+        // a call started before the breaker opened has nothing left to decide
+        if (state == State.OPEN) {
+            return;
+        }
+        record((byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0)));
+        if (windowCount >= minCalls
+                && (windowFailures >= failureRate * windowCount || windowSlow >= slowRate * windowCount)) {
+            open();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Map<String, Object> describe() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("state", state);
+        description.put("window", windowCount);
+        description.put("windowFailures", windowFailures);
+        description.put("windowSlow", windowSlow);
+        description.put("calls", calls);
+        description.put("failures", failures);
+        description.put("slow", slowCalls);
+        description.put("rejected", rejected);
+        description.put("opened", opened);
+        return description;
+    }
+
+    private void record(byte outcome) {
+        if (windowCount == window.length) {
+            byte evicted = window[windowNext];
+            windowFailures -= (evicted & FAILED) != 0 ? 1 : 0;
+            windowSlow -= (evicted & SLOW) != 0 ? 1 : 0;
+        } else {
+            windowCount++;
+        }
+        window[windowNext] = outcome;
+        windowNext = (windowNext + 1) % window.length;
+        windowFailures += (outcome & FAILED) != 0 ? 1 : 0;
+        windowSlow += (outcome & SLOW) != 0 ? 1 : 0;
+    }
+
+    private void open() {
+        if (state != State.OPEN) {
+            log.warn("Сервер статистики недоступен, запросы приостановлены на {} мс", openNanos / 1_000_000);
+        }
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        opened++;
+        resetWindow();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        resetWindow();
+        log.info("Сервер статистики снова доступен");
+    }
+
+    private void resetWindow() {
+        windowNext = 0;
+        windowCount = 0;
+        windowFailures = 0;
+        windowSlow = 0;
+    }
+}
@@ -0,0 +1,103 @@
+package ru.practicum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Callers only append to a lock-free queue; one flusher thread ships it in batches
+// as soon as a full batch is queued or the linger time has passed.
+public class HitBatcher implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(HitBatcher.class);
+
+    private final ConcurrentLinkedQueue<HitDto> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int batchSize;
+    private final int capacity;
+    private final long lingerNanos;
+    private final Consumer<List<HitDto>> shipper;
+    private final Thread flusher;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running = true;
+
+    public HitBatcher(int batchSize, int capacity, Duration linger, Consumer<List<HitDto>> shipper) {
+        this.batchSize = batchSize;
+        this.capacity = capacity;
+        this.lingerNanos = linger.toNanos();
+        this.shipper = shipper;
+        this.flusher = new Thread(this::run, "stat-client-batcher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public void add(HitDto hitDto) {
+        int queued = size.incrementAndGet();
+        if (queued > capacity) {
+            size.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        queue.offer(hitDto);
+        if (queued == batchSize) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    public int getQueued() {
+        return size.get();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    // Stops the flusher after it has shipped everything queued so far
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(this, lingerNanos);
+            flush();
+        }
+        flush();
+    }
+
+    private void flush() {
+        while (!queue.isEmpty()) {
+            List<HitDto> batch = new ArrayList<>(Math.min(batchSize, size.get()));
+            HitDto hitDto;
+            while (batch.size() < batchSize && (hitDto = queue.poll()) != null) {
+                batch.add(hitDto);
+            }
+            size.addAndGet(-batch.size());
+            try {
+                shipper.accept(batch);
+                batches.increment();
+            } catch (RuntimeException e) {
+                log.warn("Не удалось отправить пакет из {} просмотров", batch.size(), e);
+            }
+        }
+    }
+}
@@ -1,31 +1,153 @@
 package ru.practicum;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.util.DefaultUriBuilderFactory;
 
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Service
 public class HitClient extends BaseClient {
+    private static final Logger log = LoggerFactory.getLogger(HitClient.class);
+
+    private final String serverUrl;
+    // null unless stat.client.spool.enabled
+    private final HitSpool spool;
+    // null in sync mode
+    private final AsyncHitSender asyncSender;
+    // null unless stat.client.mode=batch
+    private final HitBatcher batcher;
+    // null unless stat.client.mode=counts
+    private final HitCounter counter;
 
     @Autowired
-    public HitClient(@Value("${stat.server.url}") String serverUrl, RestTemplateBuilder builder) {
+    public HitClient(@Value("${stat.server.url}") String serverUrl,
+                     StatClientProperties properties,
+                     RestTemplateBuilder builder,
+                     ObjectMapper objectMapper) {
         super(
                 builder
                         .uriTemplateHandler(new DefaultUriBuilderFactory(serverUrl + Utils.HIT))
-                        .requestFactory(HttpComponentsClientHttpRequestFactory::new)
-                        .build()
+                        .requestFactory(() -> requestFactory(properties))
+                        .additionalMessageConverters(new BinaryHttpMessageConverter())
+                        .build(),
+                properties.getFormat() == StatClientProperties.Format.BINARY
+                        ? BinaryHttpMessageConverter.MEDIA_TYPE
+                        : MediaType.APPLICATION_JSON,
+                properties.getBreaker().isEnabled() ? circuitBreaker(properties.getBreaker()) : null,
+                new Bulkhead(properties.getBulkhead().getMaxConcurrent(), properties.getBulkhead().getMaxWait())
         );
+        boolean binary = properties.getFormat() == StatClientProperties.Format.BINARY;
+        StatClientProperties.Mode mode = properties.getMode();
+        StatClientProperties.Spool spoolSettings = properties.getSpool();
+        StatClientProperties.Async async = properties.getAsync();
+        StatClientProperties.Batch batch = properties.getBatch();
+        this.serverUrl = serverUrl;
+        if (spoolSettings.isEnabled() && (spoolSettings.getDir() == null || !Paths.get(spoolSettings.getDir()).isAbsolute())) {
+            throw new IllegalStateException("stat.client.spool.dir должен быть абсолютным путём: " + spoolSettings.getDir());
+        }
+        try {
+            this.spool = spoolSettings.isEnabled()
+                    ? new HitSpool(Paths.get(spoolSettings.getDir()), spoolSettings.getSegmentSize().toBytes(),
+                    spoolSettings.getMaxSize().toBytes(), batch.getSize(), spoolSettings.getRetryInterval(), this::replay)
+                    : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.asyncSender = mode.isAsync()
+                ? new AsyncHitSender(serverUrl, binary ? BinaryFormat.MEDIA_TYPE : MediaType.APPLICATION_JSON_VALUE,
+                binary ? HitClient::encodeBinary : body -> encodeJson(objectMapper, body), async.getThreads(),
+                async.getMaxPending(), async.getTimeout(), spool == null ? null : this::spill, getCircuitBreaker())
+                : null;
+        this.batcher = mode == StatClientProperties.Mode.BATCH
+                ? new HitBatcher(batch.getSize(), batch.getCapacity(), batch.getLinger(), asyncSender::sendBatch)
+                : null;
+        this.counter = mode == StatClientProperties.Mode.COUNTS
+                ? new HitCounter(properties.getCounts().getInterval(), properties.getCounts().isUnique(), batch.getSize(),
+                properties.getCounts().getMaxHits(), properties.getCounts().getMaxIps(), asyncSender::sendCounts)
+                : null;
+    }
+
+    // The batcher and the counter are flushed into the sender before the sender waits for its requests,
+    // the spool is closed last so that whatever the sender could not deliver still reaches the disk
+    @PreDestroy
+    public void close() {
+        if (batcher != null) {
+            batcher.close();
+        }
+        if (counter != null) {
+            counter.close();
+        }
+        if (asyncSender != null) {
+            asyncSender.close();
+        }
+        if (spool != null) {
+            spool.close();
+        }
     }
 
+    // In async, batch and counts modes the hit is only queued, so the answer is always 202 Accepted
     public ResponseEntity<Object> createHit(HitDto hitDto) {
-        return post("", hitDto);
+        if (counter != null) {
+            counter.add(hitDto);
+            return ResponseEntity.accepted().build();
+        }
+        if (batcher != null) {
+            batcher.add(hitDto);
+            return ResponseEntity.accepted().build();
+        }
+        if (asyncSender != null) {
+            asyncSender.send(hitDto);
+            return ResponseEntity.accepted().build();
+        }
+        if (spool == null) {
+            return post("", hitDto);
+        }
+        try {
+            ResponseEntity<Object> response = post("", hitDto);
+            if (!isRetryable(response.getStatusCode())) {
+                return response;
+            }
+        } catch (RestClientException e) {
+            log.debug("Сервер статистики недоступен: {}", e.toString());
+        }
+        spool.append(Utils.HITS_BATCH, List.of(hitDto));
+        return ResponseEntity.accepted().build();
+    }
+
+    public AsyncHitSender getAsyncSender() {
+        return asyncSender;
+    }
+
+    public HitBatcher getBatcher() {
+        return batcher;
+    }
+
+    public HitCounter getCounter() {
+        return counter;
+    }
+
+    public HitSpool getSpool() {
+        return spool;
     }
 
     public ResponseEntity<Object> getHit(LocalDateTime start, LocalDateTime end, List uris, Boolean unique) {
@@ -36,5 +158,72 @@ public class HitClient extends BaseClient {
         return get("?start={start}&end={end}", start, end);
     }
 
+    // One pooled connection per bulkhead permit; the pool wait is bounded like the bulkhead wait
+    private static HttpComponentsClientHttpRequestFactory requestFactory(StatClientProperties properties) {
+        int connections = properties.getBulkhead().getMaxConcurrent();
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(HttpClientBuilder.create()
+                .useSystemProperties()
+                .setMaxConnTotal(connections)
+                .setMaxConnPerRoute(connections)
+                .build());
+        factory.setConnectTimeout((int) properties.getTimeout().getConnect().toMillis());
+        factory.setReadTimeout((int) properties.getTimeout().getRead().toMillis());
+        factory.setConnectionRequestTimeout((int) properties.getBulkhead().getMaxWait().toMillis());
+        return factory;
+    }
+
+    private static CircuitBreaker circuitBreaker(StatClientProperties.Breaker breaker) {
+        return new CircuitBreaker(breaker.getWindow(), breaker.getMinCalls(), breaker.getFailureRate(), breaker.getSlowRate(),
+                breaker.getSlowCall(), breaker.getOpenDuration(), breaker.getProbeCalls());
+    }
+
+    private void spill(String path, Object body) {
+        if (body instanceof HitDto) {
+            spool.append(Utils.HITS_BATCH, List.of(body));
+        } else {
+            spool.append(path, (List<?>) body);
+        }
+    }
+
+    // Called from the spool thread; a batch the server refuses for good is dropped so it cannot block the rest
+    private boolean replay(String path, List<?> items) {
+        ResponseEntity<Object> response;
+        try {
+            response = post(serverUrl + path, items);
+        } catch (RestClientException e) {
+            return false;
+        }
+        if (isRetryable(response.getStatusCode())) {
+            return false;
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            log.warn("Сервер статистики отклонил {} просмотров из буфера: {}", items.size(), response.getStatusCode());
+        }
+        return true;
+    }
+
+    // 429 limits one visitor ip, replaying it later would only get around the server's limiter
+    private static boolean isRetryable(HttpStatus status) {
+        return status.is5xxServerError();
+    }
+
+    private static byte[] encodeBinary(Object body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            BinaryFormat.write(out, body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeJson(ObjectMapper objectMapper, Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
 
 }
@@ -0,0 +1,176 @@
+package ru.practicum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Hits are folded into one counter per (app, uri, minute); every interval only the counts are shipped.
+// A cell above the server's per-count limits is shipped as several counts, so one hot uri cannot fail a whole batch.
+// A counter is updated and drained under its ConcurrentHashMap bin lock, so a hit is shipped exactly once
+// and callers only contend when their keys share a bin.
+public class HitCounter implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(HitCounter.class);
+
+    private final ConcurrentHashMap<Key, Cell> cells = new ConcurrentHashMap<>();
+    private final boolean unique;
+    private final int batchSize;
+    private final long maxHits;
+    private final int maxIps;
+    private final Consumer<List<HitCountDto>> shipper;
+    private final ScheduledExecutorService flusher;
+    private final LongAdder counted = new LongAdder();
+    private final LongAdder shipped = new LongAdder();
+
+    public HitCounter(Duration interval, boolean unique, int batchSize, long maxHits, int maxIps,
+                      Consumer<List<HitCountDto>> shipper) {
+        this.unique = unique;
+        this.batchSize = batchSize;
+        this.maxHits = Math.max(1, maxHits);
+        this.maxIps = Math.max(1, maxIps);
+        this.shipper = shipper;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stat-client-counter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flush, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void add(HitDto hitDto) {
+        LocalDateTime minute = hitDto.toDateTime().truncatedTo(ChronoUnit.MINUTES);
+        cells.compute(new Key(hitDto.getApp(), hitDto.getUri(), minute), (key, cell) -> {
+            if (cell == null) {
+                cell = new Cell();
+            }
+            cell.hits++;
+            if (unique && hitDto.getIp() != null) {
+                cell.ips.add(hitDto.getIp());
+            }
+            return cell;
+        });
+        counted.increment();
+    }
+
+    public int getKeys() {
+        return cells.size();
+    }
+
+    public long getCounted() {
+        return counted.sum();
+    }
+
+    public long getShipped() {
+        return shipped.sum();
+    }
+
+    // Stops the schedule and ships whatever was counted since the last flush
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void flush() {
+        List<HitCountDto> batch = new ArrayList<>();
+        for (Key key : cells.keySet()) {
+            // removing under the bin lock hands the cell over whole: later hits start a new one
+            Cell cell = cells.remove(key);
+            if (cell == null) {
+                continue;
+            }
+            for (HitCountDto count : split(key, cell)) {
+                batch.add(count);
+                if (batch.size() == batchSize) {
+                    ship(batch);
+                    batch = new ArrayList<>();
+                }
+            }
+            shipped.add(cell.hits);
+        }
+        if (!batch.isEmpty()) {
+            ship(batch);
+        }
+    }
+
+    // A cell never holds more ips than hits, so with parts = max(hits / maxHits, ips / maxIps) rounded up
+    // every part gets at least one hit, and even shares keep each part within both limits
+    private List<HitCountDto> split(Key key, Cell cell) {
+        List<String> ips = unique ? new ArrayList<>(cell.ips) : null;
+        int ipCount = ips == null ? 0 : ips.size();
+        long parts = Math.max((cell.hits + maxHits - 1) / maxHits, (ipCount + maxIps - 1) / maxIps);
+        if (parts <= 1) {
+            return List.of(HitCountDto.of(key.app, key.uri, key.minute, cell.hits, ips));
+        }
+        List<HitCountDto> counts = new ArrayList<>((int) parts);
+        for (long part = 0; part < parts; part++) {
+            long hits = cell.hits / parts + (part < cell.hits % parts ? 1 : 0);
+            List<String> partIps = ips == null ? null
+                    : new ArrayList<>(ips.subList((int) (part * ipCount / parts), (int) ((part + 1) * ipCount / parts)));
+            counts.add(HitCountDto.of(key.app, key.uri, key.minute, hits, partIps));
+        }
+        return counts;
+    }
+
+    private void ship(List<HitCountDto> batch) {
+        try {
+            shipper.accept(batch);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось отправить счётчики просмотров", e);
+        }
+    }
+
+    // Only touched inside compute/remove of its own key
+    private static class Cell {
+        private long hits;
+        private final Set<String> ips = new HashSet<>();
+    }
+
+    private static class Key {
+        private final String app;
+        private final String uri;
+        private final LocalDateTime minute;
+
+        Key(String app, String uri, LocalDateTime minute) {
+            this.app = app;
+            this.uri = uri;
+            this.minute = minute;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(app, key.app) && Objects.equals(uri, key.uri) && minute.equals(key.minute);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(app, uri, minute);
+        }
+    }
+}
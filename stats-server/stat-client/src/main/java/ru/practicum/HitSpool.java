@@ -0,0 +1,351 @@
+package ru.practicum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Hits the stats server did not take are appended as length and CRC framed records to numbered segment files.
+// Every retry interval the open segment is sealed and the sealed ones are replayed in order, in batches;
+// the first failed batch stops the replay until the next interval. The replay position survives restarts.
+public class HitSpool implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(HitSpool.class);
+    private static final String SUFFIX = ".spool";
+    private static final String POSITION = "position";
+    private static final int RECORD_HEADER = 2 * Integer.BYTES;
+
+    // Returns false when the server is still unavailable, the batch is then retried on the next interval
+    public interface Shipper {
+        boolean ship(String path, List<?> items);
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final int batchSize;
+    private final Shipper shipper;
+    private final ScheduledExecutorService replayer;
+    private final AtomicLong size = new AtomicLong();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder corrupted = new LongAdder();
+    // the segment the previous run had open, the only place a record cut short by a crash is expected
+    private final long recoveredSegment;
+    // guarded by this
+    private FileChannel writer;
+    private long writerSegment;
+    // touched by the replayer thread only
+    private long positionSegment;
+    private long positionOffset;
+
+    public HitSpool(Path directory, long segmentBytes, long maxBytes, int batchSize, Duration retryInterval,
+                    Shipper shipper) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.batchSize = batchSize;
+        this.shipper = shipper;
+        Files.createDirectories(directory);
+        List<Long> segments = listSegments();
+        for (long segment : segments) {
+            size.addAndGet(Files.size(segmentPath(segment)));
+        }
+        // a torn record left by the previous run stays behind in its own segment and ends its replay
+        this.recoveredSegment = segments.isEmpty() ? -1 : segments.get(segments.size() - 1);
+        this.writerSegment = recoveredSegment + 1;
+        this.writer = openWriter(writerSegment);
+        loadPosition();
+        if (size.get() > 0) {
+            log.info("В буфере статистики {} байт неотправленных просмотров", size.get());
+        }
+        this.replayer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stat-client-spool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.replayer.scheduleWithFixedDelay(this::replay, retryInterval.toMillis(), retryInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    // Not fsynced: the spool bridges server outages, a crash of this process may still lose the last records
+    public void append(String path, List<?> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        byte[] payload;
+        try {
+            payload = encode(path, items);
+        } catch (IOException | RuntimeException e) {
+            dropped.add(items.size());
+            log.warn("Не удалось сохранить просмотры в буфер", e);
+            return;
+        }
+        synchronized (this) {
+            if (writer == null || size.get() + RECORD_HEADER + payload.length > maxBytes) {
+                dropped.add(items.size());
+                return;
+            }
+            try {
+                if (writer.position() > 0 && writer.position() + RECORD_HEADER + payload.length > segmentBytes) {
+                    rotate();
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + payload.length);
+                buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+                while (buffer.hasRemaining()) {
+                    writer.write(buffer);
+                }
+                size.addAndGet(RECORD_HEADER + payload.length);
+            } catch (IOException e) {
+                dropped.add(items.size());
+                log.warn("Не удалось записать просмотры в буфер", e);
+                return;
+            }
+        }
+        spilled.add(items.size());
+    }
+
+    public long getSize() {
+        return size.get();
+    }
+
+    public long getSpilled() {
+        return spilled.sum();
+    }
+
+    public long getReplayed() {
+        return replayed.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    // records, not hits: a damaged record cannot tell how many hits it held
+    public long getCorrupted() {
+        return corrupted.sum();
+    }
+
+    // Unsent records stay on disk for the next start
+    @Override
+    public void close() {
+        replayer.shutdown();
+        try {
+            replayer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                writer.force(false);
+                writer.close();
+            } catch (IOException e) {
+                log.warn("Не удалось закрыть буфер статистики", e);
+            }
+            writer = null;
+        }
+    }
+
+    private void replay() {
+        try {
+            for (long segment : seal()) {
+                if (!replay(segment)) {
+                    return;
+                }
+                Path path = segmentPath(segment);
+                long bytes = Files.size(path);
+                Files.delete(path);
+                size.addAndGet(-bytes);
+                savePosition(segment + 1, 0);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось воспроизвести буфер статистики", e);
+        }
+    }
+
+    // Closes the open segment if it has records, so the replay never reads a file that is still being written
+    private synchronized List<Long> seal() throws IOException {
+        if (writer == null) {
+            return List.of();
+        }
+        if (writer.position() > 0) {
+            rotate();
+        }
+        return listSegments().stream()
+                .filter(segment -> segment < writerSegment)
+                .collect(Collectors.toList());
+    }
+
+    private boolean replay(long segment) throws IOException {
+        long offset = segment == positionSegment ? positionOffset : 0;
+        long end = Files.size(segmentPath(segment));
+        try (InputStream file = Files.newInputStream(segmentPath(segment))) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(file));
+            for (long skipped = 0; skipped < offset; ) {
+                long step = in.skip(offset - skipped);
+                if (step <= 0) {
+                    return true;
+                }
+                skipped += step;
+            }
+            String batchPath = null;
+            List<Object> batch = new ArrayList<>();
+            while (true) {
+                Record record = offset < end ? readRecord(in, end - offset) : null;
+                boolean last = record == null;
+                if (offset < end && (record == null || record.payload == null && offset + record.size() == end)) {
+                    // only the previous run can have been cut off mid-record, and only at the end of its segment
+                    if (segment != recoveredSegment) {
+                        corrupted.increment();
+                        log.warn("Повреждён хвост сегмента {} буфера статистики со смещения {}", segment, offset);
+                    }
+                    last = true;
+                } else if (record != null && record.payload == null) {
+                    corrupted.increment();
+                    log.warn("Пропущена повреждённая запись в сегменте {} буфера статистики на смещении {}", segment, offset);
+                    offset += record.size();
+                    continue;
+                }
+                String path = null;
+                List<?> items = null;
+                if (!last) {
+                    DataInputStream payload = new DataInputStream(new ByteArrayInputStream(record.payload));
+                    path = payload.readUTF();
+                    items = (List<?>) BinaryFormat.read(payload);
+                }
+                // records of one kind are joined until the batch is full
+                if (!batch.isEmpty() && (last || !path.equals(batchPath) || batch.size() >= batchSize)) {
+                    if (!shipper.ship(batchPath, batch)) {
+                        return false;
+                    }
+                    replayed.add(batch.size());
+                    savePosition(segment, offset);
+                    batch = new ArrayList<>();
+                }
+                if (last) {
+                    return true;
+                }
+                batchPath = path;
+                batch.addAll(items);
+                offset += record.size();
+            }
+        }
+    }
+
+    // null when the record cannot be framed: the header or the payload is cut short or the length makes no sense
+    private Record readRecord(DataInputStream in, long remaining) throws IOException {
+        if (remaining < RECORD_HEADER) {
+            return null;
+        }
+        int length = in.readInt();
+        int crc = in.readInt();
+        if (length < 0 || length > segmentBytes || RECORD_HEADER + (long) length > remaining) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        CRC32 actual = new CRC32();
+        actual.update(payload);
+        return new Record(length, (int) actual.getValue() == crc ? payload : null);
+    }
+
+    private static byte[] encode(String path, List<?> items) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(path);
+            BinaryFormat.write(out, items);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void rotate() throws IOException {
+        writer.force(false);
+        writer.close();
+        writer = openWriter(++writerSegment);
+    }
+
+    private void loadPosition() throws IOException {
+        Path path = directory.resolve(POSITION);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            positionSegment = in.readLong();
+            positionOffset = in.readLong();
+        } catch (EOFException e) {
+            log.warn("Позиция буфера статистики повреждена, воспроизведение начнётся с начала сегмента");
+        }
+    }
+
+    private void savePosition(long segment, long offset) throws IOException {
+        positionSegment = segment;
+        positionOffset = offset;
+        Path temp = directory.resolve(POSITION + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+            out.writeLong(segment);
+            out.writeLong(offset);
+        }
+        Files.move(temp, directory.resolve(POSITION), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private FileChannel openWriter(long segment) throws IOException {
+        return FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> list = Files.list(directory)) {
+            return list.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%020d%s", segment, SUFFIX));
+    }
+
+    private static final class Record {
+        private final int length;
+        // null when the checksum does not match
+        private final byte[] payload;
+
+        private Record(int length, byte[] payload) {
+            this.length = length;
+            this.payload = payload;
+        }
+
+        private long size() {
+            return RECORD_HEADER + (long) length;
+        }
+    }
+}
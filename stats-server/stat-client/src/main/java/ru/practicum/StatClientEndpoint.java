@@ -0,0 +1,60 @@
+package ru.practicum;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Component
+@Endpoint(id = "statclient")
+public class StatClientEndpoint {
+    private final HitClient hitClient;
+
+    public StatClientEndpoint(HitClient hitClient) {
+        this.hitClient = hitClient;
+    }
+
+    @ReadOperation
+    public Map<String, Object> statClient() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        if (hitClient.getCircuitBreaker() != null) {
+            description.put("breaker", hitClient.getCircuitBreaker().describe());
+        }
+        description.put("bulkhead", hitClient.getBulkhead().describe());
+        AsyncHitSender sender = hitClient.getAsyncSender();
+        if (sender != null) {
+            Map<String, Object> async = new LinkedHashMap<>();
+            async.put("sent", sender.getSent());
+            async.put("dropped", sender.getDropped());
+            async.put("errors", sender.getErrors());
+            async.put("pending", sender.getPending());
+            description.put("async", async);
+        }
+        if (hitClient.getBatcher() != null) {
+            Map<String, Object> batch = new LinkedHashMap<>();
+            batch.put("queued", hitClient.getBatcher().getQueued());
+            batch.put("batches", hitClient.getBatcher().getBatches());
+            batch.put("dropped", hitClient.getBatcher().getDropped());
+            description.put("batch", batch);
+        }
+        if (hitClient.getCounter() != null) {
+            Map<String, Object> counts = new LinkedHashMap<>();
+            counts.put("keys", hitClient.getCounter().getKeys());
+            counts.put("counted", hitClient.getCounter().getCounted());
+            counts.put("shipped", hitClient.getCounter().getShipped());
+            description.put("counts", counts);
+        }
+        if (hitClient.getSpool() != null) {
+            Map<String, Object> spool = new LinkedHashMap<>();
+            spool.put("bytes", hitClient.getSpool().getSize());
+            spool.put("spilled", hitClient.getSpool().getSpilled());
+            spool.put("replayed", hitClient.getSpool().getReplayed());
+            spool.put("dropped", hitClient.getSpool().getDropped());
+            spool.put("corrupted", hitClient.getSpool().getCorrupted());
+            description.put("spool", spool);
+        }
+        return description;
+    }
+}
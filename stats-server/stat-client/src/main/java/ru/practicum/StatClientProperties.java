@@ -0,0 +1,106 @@
+package ru.practicum;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "stat.client")
+public class StatClientProperties {
+    private Format format = Format.JSON;
+    private Mode mode = Mode.SYNC;
+    private final Async async = new Async();
+    private final Batch batch = new Batch();
+    private final Counts counts = new Counts();
+    private final Spool spool = new Spool();
+    private final Timeout timeout = new Timeout();
+    private final BulkheadSettings bulkhead = new BulkheadSettings();
+    private final Breaker breaker = new Breaker();
+
+    public enum Format {
+        JSON,
+        BINARY
+    }
+
+    public enum Mode {
+        SYNC,
+        ASYNC,
+        BATCH,
+        COUNTS;
+
+        // every mode but sync only queues the hit and ships it from the async sender
+        public boolean isAsync() {
+            return this != SYNC;
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Async {
+        private int threads = 2;
+        private int maxPending = 1000;
+        private Duration timeout = Duration.ofSeconds(2);
+    }
+
+    @Getter
+    @Setter
+    public static class Batch {
+        private int size = 500;
+        private int capacity = 100000;
+        private Duration linger = Duration.ofMillis(200);
+    }
+
+    @Getter
+    @Setter
+    public static class Counts {
+        private Duration interval = Duration.ofSeconds(1);
+        private boolean unique = true;
+        // must not exceed stats.counts.max-hits and stats.counts.max-ips of the server
+        private long maxHits = 100000;
+        private int maxIps = 10000;
+    }
+
+    @Getter
+    @Setter
+    public static class Spool {
+        private boolean enabled;
+        // Required when enabled, and absolute so the spool does not depend on the working directory
+        private String dir;
+        private DataSize segmentSize = DataSize.ofMegabytes(8);
+        private DataSize maxSize = DataSize.ofMegabytes(256);
+        private Duration retryInterval = Duration.ofSeconds(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Timeout {
+        private Duration connect = Duration.ofSeconds(1);
+        private Duration read = Duration.ofSeconds(2);
+    }
+
+    @Getter
+    @Setter
+    public static class BulkheadSettings {
+        private int maxConcurrent = 20;
+        private Duration maxWait = Duration.ofMillis(50);
+    }
+
+    @Getter
+    @Setter
+    public static class Breaker {
+        private boolean enabled = true;
+        private int window = 50;
+        private int minCalls = 20;
+        private double failureRate = 0.5;
+        private double slowRate = 0.8;
+        private Duration slowCall = Duration.ofSeconds(1);
+        private Duration openDuration = Duration.ofSeconds(10);
+        private int probeCalls = 3;
+    }
+}
@@ -0,0 +1,11 @@
+package ru.practicum;
+
+import org.springframework.web.client.RestClientException;
+
+// Thrown without a request when the breaker is open or the bulkhead is full
+public class StatsUnavailableException extends RestClientException {
+
+    public StatsUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,111 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+    private static final long FAST = Duration.ofMillis(1).toNanos();
+    private static final long SLOW = Duration.ofSeconds(2).toNanos();
+
+    @Test
+    void staysClosedBelowMinCalls() {
+        CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true, FAST);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void opensWhenTheFailureRateIsReached() {
+        CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        for (int i = 0; i < 5; i++) {
+            call(breaker, i % 2 == 0, FAST);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void opensWhenTooManyCallsAreSlow() {
+        CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        for (int i = 0; i < 5; i++) {
+            call(breaker, false, SLOW);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void oldOutcomesLeaveTheWindow() {
+        CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        for (int i = 0; i < 2; i++) {
+            call(breaker, true, FAST);
+        }
+        for (int i = 0; i < 20; i++) {
+            call(breaker, false, FAST);
+        }
+        call(breaker, true, FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void halfOpenLetsOnlyTheProbesThroughAndClosesWhenTheyAllSucceed() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker(Duration.ofMillis(20));
+        Thread.sleep(40);
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        breaker.onResult(false, FAST);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onResult(false, FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void aFailedProbeOpensAgain() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker(Duration.ofMillis(20));
+        Thread.sleep(40);
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(true, FAST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(2L, breaker.describe().get("opened"));
+    }
+
+    @Test
+    void aCallStartedBeforeOpeningDoesNotCount() {
+        CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        assertTrue(breaker.tryAcquire());
+        for (int i = 0; i < 5; i++) {
+            call(breaker, true, FAST);
+        }
+        breaker.onResult(false, FAST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(0, breaker.describe().get("window"));
+    }
+
+    private static CircuitBreaker openBreaker(Duration openDuration) {
+        CircuitBreaker breaker = breaker(openDuration);
+        for (int i = 0; i < 5; i++) {
+            call(breaker, true, FAST);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    private static CircuitBreaker breaker(Duration openDuration) {
+        return new CircuitBreaker(10, 5, 0.5, 0.8, Duration.ofSeconds(1), openDuration, 2);
+    }
+
+    private static void call(CircuitBreaker breaker, boolean failed, long nanos) {
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(failed, nanos);
+    }
+}
@@ -0,0 +1,127 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HitSpoolTest {
+    private static final Duration RETRY = Duration.ofMillis(20);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replayShipsSpooledHitsInOrderAndFreesTheSpool() throws Exception {
+        List<Object> shipped = Collections.synchronizedList(new ArrayList<>());
+        try (HitSpool spool = new HitSpool(directory, 1 << 20, 1 << 24, 100, RETRY, (path, items) -> shipped.addAll(items))) {
+            for (int i = 0; i < 5; i++) {
+                spool.append(Utils.HITS_BATCH, List.of(hit(i)));
+            }
+            await(() -> shipped.size() == 5 && spool.getSize() == 0);
+            assertEquals(List.of(hit(0), hit(1), hit(2), hit(3), hit(4)), shipped);
+            assertEquals(5, spool.getReplayed());
+        }
+    }
+
+    @Test
+    void replayResumesAfterTheLastShippedBatchAcrossRestarts() throws Exception {
+        List<Object> shipped = Collections.synchronizedList(new ArrayList<>());
+        try (HitSpool spool = new HitSpool(directory, 1 << 20, 1 << 24, 2, RETRY,
+                (path, items) -> shipped.isEmpty() && shipped.addAll(items))) {
+            for (int i = 0; i < 4; i++) {
+                spool.append(Utils.HITS_BATCH, List.of(hit(i)));
+            }
+            await(() -> shipped.size() == 2);
+        }
+        assertEquals(List.of(hit(0), hit(1)), shipped);
+
+        List<Object> resumed = Collections.synchronizedList(new ArrayList<>());
+        try (HitSpool spool = new HitSpool(directory, 1 << 20, 1 << 24, 2, RETRY, (path, items) -> resumed.addAll(items))) {
+            await(() -> resumed.size() == 2 && spool.getSize() == 0);
+        }
+        assertEquals(List.of(hit(2), hit(3)), resumed);
+    }
+
+    @Test
+    void batchesDoNotMixPaths() throws Exception {
+        List<String> paths = Collections.synchronizedList(new ArrayList<>());
+        try (HitSpool spool = new HitSpool(directory, 1 << 20, 1 << 24, 100, RETRY,
+                (path, items) -> paths.add(path + ":" + items.size()))) {
+            spool.append(Utils.HITS_BATCH, List.of(hit(0), hit(1)));
+            spool.append(Utils.HITS_COUNTS, List.of(new HitCountDto("app", "/events/1", "2022-09-06 11:00:00", 3L, null)));
+            spool.append(Utils.HITS_BATCH, List.of(hit(2)));
+            await(() -> paths.size() == 3);
+        }
+        assertEquals(List.of(Utils.HITS_BATCH + ":2", Utils.HITS_COUNTS + ":1", Utils.HITS_BATCH + ":1"), paths);
+    }
+
+    @Test
+    void damagedRecordIsSkippedAndTornTailOfThePreviousRunEndsTheSegment() throws Exception {
+        try (HitSpool spool = new HitSpool(directory, 1 << 20, 1 << 24, 100, Duration.ofHours(1), (path, items) -> false)) {
+            for (int i = 0; i < 3; i++) {
+                spool.append(Utils.HITS_BATCH, List.of(hit(i)));
+            }
+        }
+        Path segment = onlySegment();
+        byte[] bytes = Files.readAllBytes(segment);
+        int record = bytes.length / 3;
+        // flip a payload byte of the second record and cut the third one short
+        bytes[record + 12] ^= 1;
+        Files.write(segment, Arrays.copyOf(bytes, bytes.length - 3));
+
+        List<Object> shipped = Collections.synchronizedList(new ArrayList<>());
+        try (HitSpool spool = new HitSpool(directory, 1 << 20, 1 << 24, 100, RETRY, (path, items) -> shipped.addAll(items))) {
+            await(() -> spool.getSize() == 0);
+            assertEquals(List.of(hit(0)), shipped);
+            assertEquals(1, spool.getCorrupted());
+        }
+    }
+
+    @Test
+    void appendsBeyondTheSizeLimitAreDropped() throws IOException {
+        try (HitSpool spool = new HitSpool(directory, 1 << 20, 100, 100, Duration.ofHours(1), (path, items) -> false)) {
+            for (int i = 0; i < 10; i++) {
+                spool.append(Utils.HITS_BATCH, List.of(hit(i)));
+            }
+            assertTrue(spool.getSize() <= 100);
+            assertEquals(10, spool.getSpilled() + spool.getDropped());
+            assertTrue(spool.getDropped() > 0);
+        }
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.filter(path -> path.toString().endsWith(".spool"))
+                    .filter(path -> path.toFile().length() > 0)
+                    .collect(Collectors.toList());
+            assertEquals(1, segments.size());
+            return segments.get(0);
+        }
+    }
+
+    private static HitDto hit(int i) {
+        return new HitDto("ewm-main-service", "/events/" + i, "10.0.0." + i, "2022-09-06 11:00:0" + i);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+}
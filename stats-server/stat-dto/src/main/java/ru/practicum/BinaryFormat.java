@@ -0,0 +1,228 @@
+package ru.practicum;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Compact alternative to JSON: a tag byte, then the fields in declaration order.
+// Lists are open-ended (a marker byte before every element and a terminating one) so they can be streamed.
+public abstract class BinaryFormat {
+
+    public static final String MEDIA_TYPE = "application/x-ewm-stats";
+
+    public static final byte HIT = 1;
+    public static final byte HITS = 2;
+    public static final byte VIEW_STATS = 3;
+    public static final byte SERIES_STATS = 4;
+    public static final byte HIT_COUNTS = 5;
+
+    private static final byte END = 0;
+    private static final byte MORE = 1;
+
+    private static final byte NO_TIMESTAMP = 0;
+    private static final byte EPOCH_SECOND = 1;
+    private static final byte TEXT = 2;
+
+    // the ips count comes from the wire, so it only sizes the list up to this; a lying count then fails on EOF
+    private static final int MAX_PREALLOCATED_IPS = 1024;
+
+    public static void write(DataOutput out, Object value) throws IOException {
+        if (value instanceof HitDto) {
+            out.writeByte(HIT);
+            writeHit(out, (HitDto) value);
+            return;
+        }
+        List<?> list = (List<?>) value;
+        out.writeByte(list.isEmpty() ? VIEW_STATS : tagOf(list.get(0)));
+        for (Object element : list) {
+            writeElement(out, element);
+        }
+        writeEnd(out);
+    }
+
+    public static Object read(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        if (tag == HIT) {
+            return readHit(in);
+        }
+        List<Object> list = new ArrayList<>();
+        while (in.readByte() == MORE) {
+            switch (tag) {
+                case HITS:
+                    list.add(readHit(in));
+                    break;
+                case VIEW_STATS:
+                    list.add(new ViewStats(readString(in), readString(in), readLong(in)));
+                    break;
+                case SERIES_STATS:
+                    list.add(new SeriesStats(readString(in), readString(in), readString(in), readLong(in)));
+                    break;
+                case HIT_COUNTS:
+                    list.add(readHitCount(in));
+                    break;
+                default:
+                    throw new IOException("Unknown binary stats tag " + tag);
+            }
+        }
+        return list;
+    }
+
+    public static void writeElement(DataOutput out, Object element) throws IOException {
+        out.writeByte(MORE);
+        if (element instanceof HitDto) {
+            writeHit(out, (HitDto) element);
+        } else if (element instanceof ViewStats) {
+            ViewStats stats = (ViewStats) element;
+            writeString(out, stats.getApp());
+            writeString(out, stats.getUri());
+            writeLong(out, stats.getHits());
+        } else if (element instanceof SeriesStats) {
+            SeriesStats stats = (SeriesStats) element;
+            writeString(out, stats.getApp());
+            writeString(out, stats.getUri());
+            writeString(out, stats.getBucket());
+            writeLong(out, stats.getHits());
+        } else if (element instanceof HitCountDto) {
+            writeHitCount(out, (HitCountDto) element);
+        } else {
+            throw new IllegalArgumentException("Unsupported binary stats element " + element.getClass());
+        }
+    }
+
+    public static void writeEnd(DataOutput out) throws IOException {
+        out.writeByte(END);
+    }
+
+    public static boolean isSupported(Class<?> type) {
+        return HitDto.class.isAssignableFrom(type) || ViewStats.class.isAssignableFrom(type)
+                || SeriesStats.class.isAssignableFrom(type) || HitCountDto.class.isAssignableFrom(type);
+    }
+
+    private static byte tagOf(Object element) {
+        if (element instanceof HitDto) {
+            return HITS;
+        }
+        if (element instanceof SeriesStats) {
+            return SERIES_STATS;
+        }
+        if (element instanceof HitCountDto) {
+            return HIT_COUNTS;
+        }
+        return VIEW_STATS;
+    }
+
+    // The timestamp travels as epoch seconds and is read back as a LocalDateTime, so the receiver neither formats
+    // nor parses it; text is kept only if it does not parse
+    private static void writeHit(DataOutput out, HitDto hit) throws IOException {
+        writeString(out, hit.getApp());
+        writeString(out, hit.getUri());
+        writeString(out, hit.getIp());
+        writeTimestamp(out, hit::toDateTime, hit::getTimestamp);
+    }
+
+    private static HitDto readHit(DataInput in) throws IOException {
+        String app = readString(in);
+        String uri = readString(in);
+        String ip = readString(in);
+        byte timestamp = in.readByte();
+        if (timestamp == EPOCH_SECOND) {
+            return HitDto.of(app, uri, ip, readEpochSecond(in));
+        }
+        return new HitDto(app, uri, ip, readText(in, timestamp));
+    }
+
+    // ips are prefixed with their number, -1 when the client did not collect them
+    private static void writeHitCount(DataOutput out, HitCountDto count) throws IOException {
+        writeString(out, count.getApp());
+        writeString(out, count.getUri());
+        writeTimestamp(out, count::toDateTime, count::getTimestamp);
+        writeLong(out, count.getHits());
+        out.writeInt(count.getIps() == null ? -1 : count.getIps().size());
+        if (count.getIps() != null) {
+            for (String ip : count.getIps()) {
+                writeString(out, ip);
+            }
+        }
+    }
+
+    private static HitCountDto readHitCount(DataInput in) throws IOException {
+        String app = readString(in);
+        String uri = readString(in);
+        byte timestamp = in.readByte();
+        HitCountDto count = timestamp == EPOCH_SECOND
+                ? HitCountDto.of(app, uri, readEpochSecond(in), null, null)
+                : new HitCountDto(app, uri, readText(in, timestamp), null, null);
+        count.setHits(readLong(in));
+        int ips = in.readInt();
+        if (ips < -1) {
+            throw new IOException("Negative ips count " + ips);
+        }
+        if (ips >= 0) {
+            List<String> list = new ArrayList<>(Math.min(ips, MAX_PREALLOCATED_IPS));
+            for (int i = 0; i < ips; i++) {
+                list.add(readString(in));
+            }
+            count.setIps(list);
+        }
+        return count;
+    }
+
+    // The text is asked for only when there is no date-time, so a DTO holding one is not formatted on the way out
+    private static void writeTimestamp(DataOutput out, Supplier<LocalDateTime> dateTime, Supplier<String> text)
+            throws IOException {
+        LocalDateTime parsed;
+        try {
+            parsed = dateTime.get();
+        } catch (DateTimeParseException e) {
+            parsed = null;
+        }
+        if (parsed != null) {
+            out.writeByte(EPOCH_SECOND);
+            out.writeLong(parsed.toEpochSecond(ZoneOffset.UTC));
+            return;
+        }
+        String value = text.get();
+        if (value == null) {
+            out.writeByte(NO_TIMESTAMP);
+        } else {
+            out.writeByte(TEXT);
+            out.writeUTF(value);
+        }
+    }
+
+    private static LocalDateTime readEpochSecond(DataInput in) throws IOException {
+        return LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC);
+    }
+
+    private static String readText(DataInput in, byte timestamp) throws IOException {
+        return timestamp == TEXT ? in.readUTF() : null;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeLong(DataOutput out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+}
@@ -0,0 +1,63 @@
+package ru.practicum;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.lang.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+public class BinaryHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(BinaryFormat.MEDIA_TYPE);
+
+    public BinaryHttpMessageConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == Object.class || List.class.isAssignableFrom(clazz) || BinaryFormat.isSupported(clazz);
+    }
+
+    @Override
+    public boolean canWrite(@Nullable Type type, Class<?> clazz, @Nullable MediaType mediaType) {
+        if (!canWrite(mediaType)) {
+            return false;
+        }
+        if (List.class.isAssignableFrom(clazz)) {
+            Class<?> element = ResolvableType.forType(type != null ? type : clazz).asCollection().resolveGeneric(0);
+            return element == null || BinaryFormat.isSupported(element);
+        }
+        return HitDto.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public Object read(Type type, @Nullable Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        Object value = BinaryFormat.read(new DataInputStream(inputMessage.getBody()));
+        Class<?> expected = ResolvableType.forType(type).resolve(Object.class);
+        if (!expected.isInstance(value)) {
+            throw new HttpMessageNotReadableException("Binary stats body is not a " + expected.getSimpleName(), inputMessage);
+        }
+        return value;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return read(clazz, null, inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object value, @Nullable Type type, HttpOutputMessage outputMessage) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputMessage.getBody());
+        BinaryFormat.write(out, value);
+        out.flush();
+    }
+}
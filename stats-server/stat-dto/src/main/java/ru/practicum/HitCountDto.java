@@ -0,0 +1,69 @@
+package ru.practicum;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Hits of one (app, uri) within one minute folded together by the client; ips are sent only when unique views are counted
+@Data
+@NoArgsConstructor
+public class HitCountDto {
+    private String app;
+
+    private String uri;
+
+    private String timestamp;
+
+    private Long hits;
+
+    private List<String> ips;
+
+    // Held instead of the text as in HitDto
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient LocalDateTime dateTime;
+
+    public HitCountDto(String app, String uri, String timestamp, Long hits, List<String> ips) {
+        this.app = app;
+        this.uri = uri;
+        this.timestamp = timestamp;
+        this.hits = hits;
+        this.ips = ips;
+    }
+
+    public static HitCountDto of(String app, String uri, LocalDateTime dateTime, Long hits, List<String> ips) {
+        HitCountDto count = new HitCountDto(app, uri, null, hits, ips);
+        count.dateTime = dateTime;
+        return count;
+    }
+
+    public String getTimestamp() {
+        if (timestamp == null && dateTime != null) {
+            timestamp = Utils.formatDateTime(dateTime);
+        }
+        return timestamp;
+    }
+
+    public void setTimestamp(String timestamp) {
+        this.timestamp = timestamp;
+        this.dateTime = null;
+    }
+
+    public boolean hasTimestamp() {
+        return timestamp != null || dateTime != null;
+    }
+
+    public LocalDateTime toDateTime() {
+        if (dateTime == null && timestamp != null) {
+            dateTime = Utils.parseDateTime(timestamp);
+        }
+        return dateTime;
+    }
+}
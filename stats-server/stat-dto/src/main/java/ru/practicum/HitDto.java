@@ -1,11 +1,15 @@
 package ru.practicum;
 
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
 
 @Data
-@AllArgsConstructor
 @NoArgsConstructor
 public class HitDto {
     private String app;
@@ -15,4 +19,46 @@ public class HitDto {
     private String ip;
 
     private String timestamp;
+
+    // Held instead of the text when the hit comes from the binary format, so the time is never formatted and parsed back
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient LocalDateTime dateTime;
+
+    public HitDto(String app, String uri, String ip, String timestamp) {
+        this.app = app;
+        this.uri = uri;
+        this.ip = ip;
+        this.timestamp = timestamp;
+    }
+
+    public static HitDto of(String app, String uri, String ip, LocalDateTime dateTime) {
+        HitDto hit = new HitDto(app, uri, ip, null);
+        hit.dateTime = dateTime;
+        return hit;
+    }
+
+    public String getTimestamp() {
+        if (timestamp == null && dateTime != null) {
+            timestamp = Utils.formatDateTime(dateTime);
+        }
+        return timestamp;
+    }
+
+    public void setTimestamp(String timestamp) {
+        this.timestamp = timestamp;
+        this.dateTime = null;
+    }
+
+    public boolean hasTimestamp() {
+        return timestamp != null || dateTime != null;
+    }
+
+    public LocalDateTime toDateTime() {
+        if (dateTime == null && timestamp != null) {
+            dateTime = Utils.parseDateTime(timestamp);
+        }
+        return dateTime;
+    }
 }
@@ -0,0 +1,18 @@
+package ru.practicum;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SeriesStats {
+    private String app;
+
+    private String uri;
+
+    private String bucket;
+
+    private Long hits;
+}
@@ -1,5 +1,7 @@
 package ru.practicum;
 
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 public abstract class Utils {
@@ -8,5 +10,69 @@ public abstract class Utils {
     public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(DATE_FORMAT);
 
     public static final String HIT = "/hit";
+    public static final String HITS_BATCH = "/hits/batch";
+    public static final String HITS_COUNTS = "/hits/counts";
     public static final String STATS = "/stats";
-}
\ No newline at end of file
+    public static final String STATS_TOP = "/stats/top";
+    public static final String STATS_SERIES = "/stats/series";
+
+    // Hand-rolled for the fixed DATE_FORMAT, anything unusual falls back to DATE_FORMATTER and its errors
+    public static LocalDateTime parseDateTime(String value) {
+        if (value.length() != 19 || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != ' '
+                || value.charAt(13) != ':' || value.charAt(16) != ':') {
+            return LocalDateTime.parse(value, DATE_FORMATTER);
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        int hour = digits(value, 11, 2);
+        int minute = digits(value, 14, 2);
+        int second = digits(value, 17, 2);
+        if ((year | month | day | hour | minute | second) < 0) {
+            return LocalDateTime.parse(value, DATE_FORMATTER);
+        }
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second);
+        } catch (DateTimeException e) {
+            return LocalDateTime.parse(value, DATE_FORMATTER);
+        }
+    }
+
+    public static String formatDateTime(LocalDateTime value) {
+        if (value.getYear() < 0 || value.getYear() > 9999) {
+            return value.format(DATE_FORMATTER);
+        }
+        char[] chars = new char[19];
+        put(chars, 0, value.getYear(), 4);
+        chars[4] = '-';
+        put(chars, 5, value.getMonthValue(), 2);
+        chars[7] = '-';
+        put(chars, 8, value.getDayOfMonth(), 2);
+        chars[10] = ' ';
+        put(chars, 11, value.getHour(), 2);
+        chars[13] = ':';
+        put(chars, 14, value.getMinute(), 2);
+        chars[16] = ':';
+        put(chars, 17, value.getSecond(), 2);
+        return new String(chars);
+    }
+
+    private static int digits(String value, int from, int count) {
+        int result = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private static void put(char[] chars, int from, int value, int count) {
+        for (int i = from + count - 1; i >= from; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryFormatTest {
+
+    @Test
+    void singleHitRoundTrips() throws IOException {
+        HitDto hit = new HitDto("ewm-main-service", "/events/1", "192.163.0.1", "2022-09-06 11:00:23");
+        assertEquals(hit, roundTrip(hit));
+    }
+
+    @Test
+    void timestampsAreReadAsDateTimes() throws IOException {
+        HitDto hit = (HitDto) roundTrip(HitDto.of("app", "/events/1", null, LocalDateTime.of(2022, 9, 6, 11, 0, 23)));
+        HitCountDto count = ((List<?>) roundTrip(List.of(new HitCountDto("app", "/events/1", "2022-09-06 11:00:00", 1L, null))))
+                .stream().map(HitCountDto.class::cast).findFirst().orElseThrow();
+        assertEquals(LocalDateTime.of(2022, 9, 6, 11, 0, 23), hit.toDateTime());
+        assertEquals("2022-09-06 11:00:23", hit.getTimestamp());
+        assertEquals(LocalDateTime.of(2022, 9, 6, 11, 0), count.toDateTime());
+    }
+
+    @Test
+    void missingFieldsAndUnparsableTimestampsRoundTrip() throws IOException {
+        List<HitDto> hits = List.of(
+                new HitDto(null, "/events", null, null),
+                new HitDto("app", "/events/2", "::1", "not a timestamp"));
+        assertEquals(hits, roundTrip(hits));
+    }
+
+    @Test
+    void statsListsRoundTrip() throws IOException {
+        List<ViewStats> views = List.of(new ViewStats("app", "/events/1", 10L), new ViewStats("app", "/events/2", null));
+        List<SeriesStats> series = List.of(new SeriesStats("app", "/events/1", "2022-09-06 11:00:00", 3L));
+        assertEquals(views, roundTrip(views));
+        assertEquals(series, roundTrip(series));
+    }
+
+    @Test
+    void emptyListRoundTrips() throws IOException {
+        assertEquals(List.of(), roundTrip(List.of()));
+    }
+
+    @Test
+    void hitCountsRoundTripWithAndWithoutIps() throws IOException {
+        List<HitCountDto> counts = List.of(
+                new HitCountDto("app", "/events/1", "2022-09-06 11:00:00", 5L, List.of("10.0.0.1", "10.0.0.2")),
+                new HitCountDto("app", "/events/2", "2022-09-06 11:01:00", 7L, null),
+                new HitCountDto("app", "/events/3", "2022-09-06 11:02:00", 0L, List.of()));
+        assertEquals(counts, roundTrip(counts));
+    }
+
+    @Test
+    void streamedElementsReadBackAsAList() throws IOException {
+        List<HitDto> hits = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(BinaryFormat.HITS);
+        for (int i = 0; i < 3; i++) {
+            HitDto hit = new HitDto("app", "/events/" + i, "10.0.0." + i, "2022-09-06 11:00:0" + i);
+            hits.add(hit);
+            BinaryFormat.writeElement(out, hit);
+        }
+        BinaryFormat.writeEnd(out);
+        assertEquals(hits, BinaryFormat.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    void forgedIpsCountFailsOnMissingDataInsteadOfAllocating() throws IOException {
+        List<HitCountDto> counts = List.of(new HitCountDto("app", "/events/1", "2022-09-06 11:00:00", 1L, List.of()));
+        byte[] bytes = write(counts);
+        // the ips count is the int right before the end marker and the terminating byte
+        int countAt = bytes.length - 1 - Integer.BYTES;
+        byte[] forged = Arrays.copyOf(bytes, bytes.length);
+        forged[countAt] = 0x7f;
+        forged[countAt + 1] = (byte) 0xff;
+        forged[countAt + 2] = (byte) 0xff;
+        forged[countAt + 3] = (byte) 0xff;
+        assertThrows(EOFException.class, () -> read(forged));
+        forged[countAt] = (byte) 0xff;
+        forged[countAt + 3] = (byte) 0xfe;
+        assertThrows(IOException.class, () -> read(forged));
+    }
+
+    private static Object roundTrip(Object value) throws IOException {
+        return read(write(value));
+    }
+
+    private static byte[] write(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryFormat.write(new DataOutputStream(bytes), value);
+        return bytes.toByteArray();
+    }
+
+    private static Object read(byte[] bytes) throws IOException {
+        return BinaryFormat.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+}
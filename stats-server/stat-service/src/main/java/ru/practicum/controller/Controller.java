@@ -1,14 +1,23 @@
 package ru.practicum.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import ru.practicum.HitCountDto;
 import ru.practicum.HitDto;
+import ru.practicum.SeriesStats;
 import ru.practicum.Utils;
 import ru.practicum.service.HitService;
+import ru.practicum.service.ShardRouter;
 import ru.practicum.ViewStats;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
@@ -16,20 +25,89 @@ import java.util.List;
 @RequiredArgsConstructor
 public class Controller {
     private final HitService hitService;
+    private final ObjectMapper objectMapper;
+    private final ShardRouter shardRouter;
 
     @ResponseStatus(HttpStatus.CREATED)
     @PostMapping(Utils.HIT)
-    public HitDto makeHit(@RequestBody HitDto hitDto) {
+    public HitDto makeHit(@RequestBody HitDto hitDto,
+                          @RequestHeader(value = ShardRouter.FORWARDED_HEADER, defaultValue = "false") boolean forwarded) {
+        if (!forwarded && !shardRouter.isLocal(hitDto)) {
+            return shardRouter.forward(hitDto);
+        }
         return hitService.createHit(hitDto);
     }
 
+    @ResponseStatus(HttpStatus.CREATED)
+    @PostMapping(Utils.HITS_BATCH)
+    public void makeHits(@RequestBody List<HitDto> hitDtos,
+                         @RequestHeader(value = ShardRouter.FORWARDED_HEADER, defaultValue = "false") boolean forwarded) {
+        if (forwarded) {
+            hitService.createHits(hitDtos);
+        } else {
+            shardRouter.forwardForeign(hitDtos, hitService::createHits);
+        }
+    }
+
+    @ResponseStatus(HttpStatus.CREATED)
+    @PostMapping(Utils.HITS_COUNTS)
+    public void makeCounts(@RequestBody List<HitCountDto> countDtos,
+                           @RequestHeader(value = ShardRouter.FORWARDED_HEADER, defaultValue = "false") boolean forwarded) {
+        if (forwarded) {
+            hitService.createCounts(countDtos);
+        } else {
+            shardRouter.forwardForeignCounts(countDtos, hitService::createCounts);
+        }
+    }
+
     @GetMapping(Utils.STATS)
-    public List<ViewStats> getHits(@NonNull @RequestParam String start,
-                                   @NonNull @RequestParam String end,
-                                   @RequestParam(required = false) List<String> uris,
-                                   @RequestParam(defaultValue = "false") Boolean unique
+    public void getHits(@NonNull @RequestParam String start,
+                        @NonNull @RequestParam String end,
+                        @RequestParam(required = false) List<String> uris,
+                        @RequestParam(defaultValue = "false") Boolean unique,
+                        @RequestParam(defaultValue = "false") Boolean exact,
+                        @RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = MediaType.APPLICATION_JSON_VALUE) String accept,
+                        @RequestHeader(value = ShardRouter.FORWARDED_HEADER, defaultValue = "false") boolean forwarded,
+                        HttpServletResponse response
+    ) throws IOException {
+        ViewStatsWriter writer = new ViewStatsWriter(objectMapper, response, accept);
+        if (forwarded || !shardRouter.isEnabled()) {
+            hitService.getHit(start, end, uris, unique, exact, writer);
+        } else {
+            shardRouter.getHit(start, end, uris, unique, exact, () -> {
+                List<ViewStats> local = new ArrayList<>();
+                hitService.getHit(start, end, uris, unique, exact, local::add);
+                return local;
+            }).forEach(writer);
+        }
+        writer.finish();
+    }
+
+    @GetMapping(Utils.STATS_SERIES)
+    public List<SeriesStats> getSeries(@NonNull @RequestParam String start,
+                                       @NonNull @RequestParam String end,
+                                       @RequestParam(required = false) List<String> uris,
+                                       @RequestParam(defaultValue = "hour") String interval,
+                                       @RequestParam(defaultValue = "false") Boolean unique,
+                                       @RequestHeader(value = ShardRouter.FORWARDED_HEADER, defaultValue = "false") boolean forwarded
+    ) {
+        if (forwarded || !shardRouter.isEnabled()) {
+            return hitService.getSeries(start, end, uris, interval, unique);
+        }
+        return shardRouter.getSeries(start, end, uris, interval, unique,
+                () -> hitService.getSeries(start, end, uris, interval, unique));
+    }
+
+    @GetMapping(Utils.STATS_TOP)
+    public List<ViewStats> getTop(@NonNull @RequestParam String app,
+                                  @RequestParam(defaultValue = "60") Integer window,
+                                  @RequestParam(defaultValue = "10") Integer k,
+                                  @RequestHeader(value = ShardRouter.FORWARDED_HEADER, defaultValue = "false") boolean forwarded
     ) {
-        return hitService.getHit(start, end, uris, unique);
+        if (forwarded || !shardRouter.isEnabled()) {
+            return hitService.getTop(app, window, k);
+        }
+        return shardRouter.getTop(app, window, k, () -> hitService.getTop(app, window, k));
     }
 
 
@@ -0,0 +1,21 @@
+package ru.practicum.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import ru.practicum.service.IpRateLimiter;
+
+import java.util.Map;
+
+@Component
+@Endpoint(id = "ratelimit")
+@RequiredArgsConstructor
+public class RateLimitEndpoint {
+    private final IpRateLimiter ipRateLimiter;
+
+    @ReadOperation
+    public Map<String, Object> rateLimit() {
+        return ipRateLimiter.describe();
+    }
+}
@@ -0,0 +1,70 @@
+package ru.practicum.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.springframework.http.MediaType;
+import ru.practicum.BinaryFormat;
+import ru.practicum.ViewStats;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+class ViewStatsWriter implements Consumer<ViewStats> {
+    private final ObjectMapper objectMapper;
+    private final HttpServletResponse response;
+    private final String accept;
+    private SequenceWriter writer;
+    private DataOutputStream binary;
+
+    ViewStatsWriter(ObjectMapper objectMapper, HttpServletResponse response, String accept) {
+        this.objectMapper = objectMapper;
+        this.response = response;
+        this.accept = accept;
+    }
+
+    @Override
+    public void accept(ViewStats viewStats) {
+        try {
+            open();
+            if (binary != null) {
+                BinaryFormat.writeElement(binary, viewStats);
+            } else {
+                writer.write(viewStats);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void finish() throws IOException {
+        open();
+        if (binary != null) {
+            BinaryFormat.writeEnd(binary);
+            binary.flush();
+        } else {
+            writer.close();
+        }
+    }
+
+    // Opened lazily so that validation errors raised before the first row still reach the error handler
+    private void open() throws IOException {
+        if (writer != null || binary != null) {
+            return;
+        }
+        if (accept.contains(BinaryFormat.MEDIA_TYPE)) {
+            response.setContentType(BinaryFormat.MEDIA_TYPE);
+            binary = new DataOutputStream(new BufferedOutputStream(response.getOutputStream()));
+            binary.writeByte(BinaryFormat.VIEW_STATS);
+        } else if (accept.contains(MediaType.APPLICATION_NDJSON_VALUE)) {
+            response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(response.getOutputStream());
+        } else {
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            writer = objectMapper.writer().writeValuesAsArray(response.getOutputStream());
+        }
+    }
+}
@@ -1,12 +1,17 @@
 package ru.practicum.errorHandler;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import ru.practicum.errorResponse.ErrorResponse;
 import ru.practicum.exeption.AlreadyExistException;
 import ru.practicum.exeption.NoDataException;
+import ru.practicum.exeption.OverloadException;
+import ru.practicum.exeption.PartiallyAppliedException;
+import ru.practicum.exeption.TooManyRequestsException;
 import ru.practicum.exeption.ValidationException;
 
 
@@ -35,4 +40,30 @@ public class ErrorHandler {
                 e.getMessage()
         );
     }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ErrorResponse handleOverloadException(final OverloadException e) {
+        return new ErrorResponse(
+                e.getMessage()
+        );
+    }
+
+    // part of the batch is already stored on other shards, so a retry would duplicate it
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ErrorResponse handlePartiallyAppliedException(final PartiallyAppliedException e) {
+        return new ErrorResponse(
+                e.getMessage()
+        );
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> handleTooManyRequestsException(final TooManyRequestsException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ErrorResponse(
+                        e.getMessage()
+                ));
+    }
 }
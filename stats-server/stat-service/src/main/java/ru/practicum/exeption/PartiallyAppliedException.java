@@ -0,0 +1,7 @@
+package ru.practicum.exeption;
+
+public class PartiallyAppliedException extends RuntimeException {
+    public PartiallyAppliedException(String message) {
+        super(message);
+    }
+}
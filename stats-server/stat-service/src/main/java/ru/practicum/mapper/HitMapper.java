@@ -2,11 +2,13 @@ package ru.practicum.mapper;
 
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import ru.practicum.HitCountDto;
 import ru.practicum.HitDto;
-import ru.practicum.Utils;
 import ru.practicum.model.Hit;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class HitMapper {
@@ -15,19 +17,41 @@ public class HitMapper {
         Hit hit = new Hit();
         hit.setApp(hitDto.getApp());
         hit.setUri(hitDto.getUri());
-        hit.setIp(hitDto.getIp());
-        hit.setTimestamp(LocalDateTime.parse(hitDto.getTimestamp(), Utils.DATE_FORMATTER));
+        hit.setIp(IpMapper.toBytes(hitDto.getIp()));
+        hit.setTimestamp(hitDto.toDateTime());
         return hit;
     }
 
+    // One weighted hit for the count and a weightless one per ip, so the ips reach the sketches without adding views
+    public static List<Hit> mapToHits(HitCountDto countDto) {
+        LocalDateTime timestamp = countDto.toDateTime();
+        List<String> ips = countDto.getIps() == null ? List.of() : countDto.getIps();
+        List<Hit> hits = new ArrayList<>(ips.size() + 1);
+        hits.add(aggregated(countDto, null, timestamp, countDto.getHits()));
+        for (String ip : ips) {
+            hits.add(aggregated(countDto, IpMapper.toBytes(ip), timestamp, 0));
+        }
+        return hits;
+    }
+
     public static HitDto mapToHitDto(Hit hit) {
         return new HitDto(
                 hit.getApp(),
                 hit.getUri(),
-                hit.getIp(),
+                IpMapper.toString(hit.getIp()),
                 hit.getTimestamp().toString()
         );
     }
 
+    private static Hit aggregated(HitCountDto countDto, byte[] ip, LocalDateTime timestamp, long count) {
+        Hit hit = new Hit();
+        hit.setApp(countDto.getApp());
+        hit.setUri(countDto.getUri());
+        hit.setIp(ip);
+        hit.setTimestamp(timestamp);
+        hit.setAggregated(true);
+        hit.setCount(count);
+        return hit;
+    }
 
 }
@@ -0,0 +1,80 @@
+package ru.practicum.mapper;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import ru.practicum.exeption.ValidationException;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class IpMapper {
+
+    public static byte[] toBytes(String ip) {
+        if (ip == null) {
+            return null;
+        }
+        byte[] v4 = parseIpv4(ip);
+        if (v4 != null) {
+            return v4;
+        }
+        // brackets make InetAddress reject anything but an IPv6 literal instead of resolving it as a host name
+        if (isIpv6Literal(ip)) {
+            try {
+                return InetAddress.getByName("[" + ip + "]").getAddress();
+            } catch (UnknownHostException | SecurityException e) {
+                throw new ValidationException("Некорректный ip: " + ip);
+            }
+        }
+        throw new ValidationException("Некорректный ip: " + ip);
+    }
+
+    public static String toString(byte[] ip) {
+        if (ip == null) {
+            return null;
+        }
+        try {
+            return InetAddress.getByAddress(ip).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Stored ip has invalid length " + ip.length, e);
+        }
+    }
+
+    private static boolean isIpv6Literal(String ip) {
+        if (ip.indexOf(':') < 0) {
+            return false;
+        }
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c != ':' && c != '.' && Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] parseIpv4(String ip) {
+        byte[] bytes = new byte[4];
+        int octet = 0;
+        int value = -1;
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return null;
+                }
+            } else if (c == '.' && value >= 0 && octet < 3) {
+                bytes[octet++] = (byte) value;
+                value = -1;
+            } else {
+                return null;
+            }
+        }
+        if (octet != 3 || value < 0) {
+            return null;
+        }
+        bytes[3] = (byte) value;
+        return bytes;
+    }
+}
@@ -0,0 +1,10 @@
+package ru.practicum.model;
+
+import lombok.Data;
+
+@Data
+public class AppUri {
+    private final Integer appId;
+
+    private final Integer uriId;
+}
@@ -0,0 +1,23 @@
+package ru.practicum.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class BucketRange {
+    // null means the range is read from raw hits
+    private final Granularity granularity;
+
+    private final LocalDateTime from;
+
+    private final LocalDateTime to;
+
+    public boolean isRaw() {
+        return granularity == null;
+    }
+}
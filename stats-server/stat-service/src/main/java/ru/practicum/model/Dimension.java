@@ -0,0 +1,13 @@
+package ru.practicum.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum Dimension {
+    APP("apps"),
+    URI("uris");
+
+    private final String table;
+}
@@ -0,0 +1,28 @@
+package ru.practicum.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+@Getter
+@RequiredArgsConstructor
+public enum Granularity {
+    MINUTE("stats_minute", ChronoUnit.MINUTES, false),
+    HOUR("stats_hour", ChronoUnit.HOURS, true),
+    DAY("stats_day", ChronoUnit.DAYS, true);
+
+    private final String table;
+    private final ChronoUnit unit;
+    private final boolean sketched;
+
+    public LocalDateTime floor(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    public LocalDateTime ceil(LocalDateTime time) {
+        LocalDateTime floor = floor(time);
+        return floor.equals(time) ? time : floor.plus(1, unit);
+    }
+}
@@ -18,14 +18,28 @@ public class Hit {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private long id;
 
-    @Column(name = "app")
+    @Column(name = "app_id")
+    private Integer appId;
+
+    @Column(name = "uri_id")
+    private Integer uriId;
+
+    // names travel with the hit until the writer interns them into app_id/uri_id
+    @Transient
     private String app;
 
-    @Column(name = "uri")
+    @Transient
     private String uri;
 
+    // a client-side count: it goes to the rollups with its weight and never becomes a raw row
+    @Transient
+    private boolean aggregated;
+
+    @Transient
+    private long count = 1;
+
     @Column(name = "ip")
-    private String ip;
+    private byte[] ip;
 
     @Column(name = "created")
     private LocalDateTime timestamp;
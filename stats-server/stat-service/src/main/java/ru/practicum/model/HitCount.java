@@ -0,0 +1,15 @@
+package ru.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class HitCount {
+
+    private Integer appId;
+
+    private Integer uriId;
+
+    private Long hits;
+}
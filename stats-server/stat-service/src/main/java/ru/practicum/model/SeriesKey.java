@@ -0,0 +1,14 @@
+package ru.practicum.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class SeriesKey {
+    private final LocalDateTime bucket;
+
+    private final Integer appId;
+
+    private final Integer uriId;
+}
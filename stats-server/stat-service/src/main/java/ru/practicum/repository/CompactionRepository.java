@@ -0,0 +1,90 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.model.Granularity;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+@RequiredArgsConstructor
+public class CompactionRepository {
+    private static final int ID = 1;
+    // ctid = any(array(...)) gets a TID scan per chunk; a ctid shared by two partitions can only add rows of the same range
+    private static final String CHUNK = "delete from stats where ctid = any(array(" +
+            "select ctid from stats where created >= ? and created < ? limit ?)) and created >= ? and created < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // The lock belongs to the session, so it is taken and released on one connection held for the whole run,
+    // while the run itself uses its own connections and transactions. A dropped session releases it as well.
+    public boolean runExclusively(Runnable run) {
+        Boolean ran = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            try (Statement statement = connection.createStatement();
+                 ResultSet locked = statement.executeQuery("select pg_try_advisory_lock(hashtext('stats_compaction'))")) {
+                if (!locked.next() || !locked.getBoolean(1)) {
+                    return false;
+                }
+            }
+            try {
+                run.run();
+                return true;
+            } finally {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("select pg_advisory_unlock(hashtext('stats_compaction'))");
+                }
+            }
+        });
+        return Boolean.TRUE.equals(ran);
+    }
+
+    public Optional<LocalDateTime> findHorizon() {
+        List<LocalDateTime> horizons = jdbcTemplate.query("select horizon from stats_compaction where id = ?",
+                (rs, rowNum) -> rs.getTimestamp("horizon").toLocalDateTime(), ID);
+        return horizons.stream().findFirst();
+    }
+
+    public void saveHorizon(LocalDateTime horizon) {
+        jdbcTemplate.update("insert into stats_compaction (id, horizon) values (?, ?) " +
+                "on conflict (id) do update set horizon = greatest(stats_compaction.horizon, excluded.horizon)",
+                ID, Timestamp.valueOf(horizon));
+    }
+
+    public Optional<LocalDateTime> findOldestHit(LocalDateTime before) {
+        Timestamp oldest = jdbcTemplate.queryForObject("select min(created) from stats where created < ?",
+                Timestamp.class, Timestamp.valueOf(before));
+        return Optional.ofNullable(oldest).map(Timestamp::toLocalDateTime);
+    }
+
+    // Buckets that already exist were maintained at ingest and are left as they are
+    @Transactional
+    public void fold(LocalDateTime from, LocalDateTime to) {
+        for (Granularity granularity : Granularity.values()) {
+            String unit = granularity.name().toLowerCase();
+            jdbcTemplate.update("insert into " + granularity.getTable() + " (bucket, app_id, uri_id, hits) " +
+                            "select date_trunc('" + unit + "', created), app_id, uri_id, count(*) " +
+                            "from stats where created >= ? and created < ? " +
+                            "and app_id is not null and uri_id is not null " +
+                            "group by 1, app_id, uri_id on conflict do nothing",
+                    Timestamp.valueOf(from), Timestamp.valueOf(to));
+        }
+    }
+
+    public int deleteChunk(LocalDateTime from, LocalDateTime to, int limit) {
+        return jdbcTemplate.update(CHUNK, Timestamp.valueOf(from), Timestamp.valueOf(to), limit,
+                Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    public int archiveChunk(LocalDateTime from, LocalDateTime to, int limit) {
+        return jdbcTemplate.update("with moved as (" + CHUNK + " returning *) insert into stats_archive select * from moved",
+                Timestamp.valueOf(from), Timestamp.valueOf(to), limit, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+}
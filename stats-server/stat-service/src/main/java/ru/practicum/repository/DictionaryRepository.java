@@ -0,0 +1,51 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.model.Dimension;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class DictionaryRepository {
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    // Committed on its own so that ids cached from here survive a rollback of the calling write.
+    // Callers intern before opening their transaction, joining or suspending one would need a second connection.
+    @Transactional(propagation = Propagation.NEVER)
+    public Map<String, Integer> intern(Dimension dimension, Collection<String> names) {
+        jdbcTemplate.batchUpdate("insert into " + dimension.getTable() + " (name) values (?) on conflict (name) do nothing",
+                new ArrayList<>(names), names.size(), (ps, name) -> ps.setString(1, name));
+        return findIds(dimension, names);
+    }
+
+    public Map<String, Integer> findIds(Dimension dimension, Collection<String> names) {
+        Map<String, Integer> ids = new HashMap<>();
+        namedJdbcTemplate.query("select id, name from " + dimension.getTable() + " where name in (:names)",
+                new MapSqlParameterSource("names", names),
+                rs -> {
+                    ids.put(rs.getString("name"), rs.getInt("id"));
+                });
+        return ids;
+    }
+
+    public Map<Integer, String> findNames(Dimension dimension, Collection<Integer> ids) {
+        Map<Integer, String> names = new HashMap<>();
+        namedJdbcTemplate.query("select id, name from " + dimension.getTable() + " where id in (:ids)",
+                new MapSqlParameterSource("ids", ids),
+                rs -> {
+                    names.put(rs.getInt("id"), rs.getString("name"));
+                });
+        return names;
+    }
+}
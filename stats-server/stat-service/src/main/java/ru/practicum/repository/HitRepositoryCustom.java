@@ -0,0 +1,22 @@
+package ru.practicum.repository;
+
+import ru.practicum.model.AppUri;
+import ru.practicum.model.Hit;
+import ru.practicum.model.HitCount;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+public interface HitRepositoryCustom {
+
+    void insertAll(List<Hit> hits);
+
+    Stream<HitCount> getHitsUnique(LocalDateTime start, LocalDateTime end);
+
+    Stream<HitCount> getHitsUrisUnique(LocalDateTime start, LocalDateTime end, List<Integer> uriIds);
+
+    // Distinct ips per uri among the hits created in [from, to)
+    void getIpsSlice(LocalDateTime from, LocalDateTime to, List<Integer> uriIds, BiConsumer<AppUri, byte[]> consumer);
+}
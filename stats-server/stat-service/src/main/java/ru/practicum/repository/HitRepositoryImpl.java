@@ -0,0 +1,109 @@
+package ru.practicum.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.practicum.model.AppUri;
+import ru.practicum.model.Hit;
+import ru.practicum.model.HitCount;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+public class HitRepositoryImpl implements HitRepositoryCustom {
+    private static final String INSERT = "insert into stats (app_id, uri_id, ip, created) values ";
+    private static final String ROW = "(?, ?, ?, ?)";
+    private static final String UNIQUE = "select new ru.practicum.model.HitCount(s.appId, s.uriId, count(distinct s.ip)) " +
+            "from Hit s where s.timestamp between :start and :end ";
+    private static final String UNIQUE_ORDER = "group by s.appId, s.uriId " +
+            "order by count(s.uriId) desc";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedTemplate;
+    private final int batchSize;
+    private final String fullBatchSql;
+    // @QueryHints only takes constants, so the streamed queries live here to use the configured fetch size
+    private final int fetchSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public HitRepositoryImpl(JdbcTemplate jdbcTemplate,
+                             @Value("${stats.ingest.batch-size:500}") int batchSize,
+                             @Value("${stats.query.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.batchSize = batchSize;
+        this.fullBatchSql = insertSql(batchSize);
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public void insertAll(List<Hit> hits) {
+        for (int from = 0; from < hits.size(); from += batchSize) {
+            List<Hit> chunk = hits.subList(from, Math.min(from + batchSize, hits.size()));
+            String sql = chunk.size() == batchSize ? fullBatchSql : insertSql(chunk.size());
+            jdbcTemplate.update(sql, ps -> {
+                int i = 1;
+                for (Hit hit : chunk) {
+                    ps.setInt(i++, hit.getAppId());
+                    ps.setInt(i++, hit.getUriId());
+                    ps.setBytes(i++, hit.getIp());
+                    ps.setTimestamp(i++, Timestamp.valueOf(hit.getTimestamp()));
+                }
+            });
+        }
+    }
+
+    @Override
+    public Stream<HitCount> getHitsUnique(LocalDateTime start, LocalDateTime end) {
+        return entityManager.createQuery(UNIQUE + UNIQUE_ORDER, HitCount.class)
+                .setParameter("start", start)
+                .setParameter("end", end)
+                .setHint(HINT_FETCH_SIZE, fetchSize)
+                .getResultStream();
+    }
+
+    @Override
+    public Stream<HitCount> getHitsUrisUnique(LocalDateTime start, LocalDateTime end, List<Integer> uriIds) {
+        return entityManager.createQuery(UNIQUE + "and s.uriId in :uriIds " + UNIQUE_ORDER, HitCount.class)
+                .setParameter("start", start)
+                .setParameter("end", end)
+                .setParameter("uriIds", uriIds)
+                .setHint(HINT_FETCH_SIZE, fetchSize)
+                .getResultStream();
+    }
+
+    @Override
+    public void getIpsSlice(LocalDateTime from, LocalDateTime to, List<Integer> uriIds, BiConsumer<AppUri, byte[]> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to))
+                .addValue("uriIds", uriIds);
+        String sql = "select distinct app_id, uri_id, ip from stats " +
+                "where created >= :from and created < :to and ip is not null" +
+                (uriIds == null ? "" : " and uri_id in (:uriIds)");
+        namedTemplate.query(sql, params, rs -> {
+            consumer.accept(new AppUri(rs.getInt("app_id"), rs.getInt("uri_id")), rs.getBytes("ip"));
+        });
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder(INSERT.length() + rows * (ROW.length() + 2)).append(INSERT);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW);
+        }
+        return sql.toString();
+    }
+}
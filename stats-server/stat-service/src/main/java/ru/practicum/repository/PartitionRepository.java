@@ -0,0 +1,64 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+@RequiredArgsConstructor
+public class PartitionRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    public boolean isPartitioned(String table) {
+        Integer count = jdbcTemplate.queryForObject(
+                "select count(*) from pg_partitioned_table where partrelid = to_regclass(?)", Integer.class, table);
+        return count != null && count > 0;
+    }
+
+    public List<String> getPartitions(String table) {
+        return jdbcTemplate.queryForList("select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid " +
+                "where i.inhparent = to_regclass(?)", String.class, table);
+    }
+
+    // Rows that landed in the default partition before the range existed are moved into the new partition.
+    // The default partition stays locked from the move to the attach, so no insert can slip into the range in between;
+    // the attach needs access exclusive anyway, and taking it up front avoids a lock upgrade
+    @Transactional
+    public void createPartition(String table, String partition, LocalDate from, LocalDate to) {
+        Timestamp fromTs = Timestamp.valueOf(from.atStartOfDay());
+        Timestamp toTs = Timestamp.valueOf(to.atStartOfDay());
+        jdbcTemplate.execute("create table " + partition + " (like " + table + " including defaults)");
+        jdbcTemplate.execute("lock table " + table + "_default in access exclusive mode");
+        jdbcTemplate.update("with moved as (delete from " + table + "_default where created >= ? and created < ? returning *) " +
+                "insert into " + partition + " select * from moved", fromTs, toTs);
+        jdbcTemplate.execute("alter table " + table + " attach partition " + partition +
+                " for values from ('" + fromTs + "') to ('" + toTs + "')");
+    }
+
+    public boolean exists(String table) {
+        Boolean exists = jdbcTemplate.queryForObject("select to_regclass(?) is not null", Boolean.class, table);
+        return Boolean.TRUE.equals(exists);
+    }
+
+    public Optional<LocalDate> findOldestDefaultDay(String table, LocalDate before) {
+        Timestamp oldest = jdbcTemplate.queryForObject("select min(created) from " + table + "_default where created < ?",
+                Timestamp.class, Timestamp.valueOf(before.atStartOfDay()));
+        return Optional.ofNullable(oldest).map(ts -> ts.toLocalDateTime().toLocalDate());
+    }
+
+    @Transactional
+    public void dropPartition(String partition) {
+        jdbcTemplate.execute("drop table " + partition);
+    }
+
+    @Transactional
+    public void detachPartition(String table, String partition) {
+        jdbcTemplate.execute("alter table " + table + " detach partition " + partition);
+    }
+}
@@ -0,0 +1,345 @@
+package ru.practicum.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.model.AppUri;
+import ru.practicum.model.BucketRange;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.Hit;
+import ru.practicum.model.HitCount;
+import ru.practicum.model.SeriesKey;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+@Repository
+public class RollupRepository {
+    private static final int KEYS_PER_SELECT = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate cursorTemplate;
+    private final int precision;
+
+    public RollupRepository(JdbcTemplate jdbcTemplate,
+                            @Value("${stats.query.fetch-size:1000}") int fetchSize,
+                            @Value("${stats.unique.relative-error:0.02}") double relativeError) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Postgres only uses a server-side cursor when a fetch size is set inside a transaction
+        JdbcTemplate cursor = new JdbcTemplate(jdbcTemplate.getDataSource());
+        cursor.setFetchSize(fetchSize);
+        this.cursorTemplate = new NamedParameterJdbcTemplate(cursor);
+        this.precision = HyperLogLog.precisionFor(relativeError);
+    }
+
+    public void increment(List<Hit> hits) {
+        for (Granularity granularity : Granularity.values()) {
+            Map<Key, Long> counts = new TreeMap<>();
+            Map<Key, HyperLogLog> sketches = new TreeMap<>();
+            for (Hit hit : hits) {
+                Key key = new Key(granularity.floor(hit.getTimestamp()), hit.getAppId(), hit.getUriId());
+                counts.merge(key, hit.getCount(), Long::sum);
+                if (granularity.isSketched()) {
+                    HyperLogLog sketch = sketches.computeIfAbsent(key, k -> new HyperLogLog(precision));
+                    if (hit.getIp() != null) {
+                        sketch.add(hit.getIp());
+                    }
+                }
+            }
+            if (granularity.isSketched()) {
+                mergeSketches(granularity, upsertSketched(granularity, counts, sketches), sketches);
+            } else {
+                String table = granularity.getTable();
+                jdbcTemplate.batchUpdate("insert into " + table + " (bucket, app_id, uri_id, hits) values (?, ?, ?, ?) " +
+                                "on conflict (bucket, app_id, uri_id) do update set hits = " + table + ".hits + excluded.hits",
+                        new ArrayList<>(counts.entrySet()), counts.size(), (ps, entry) -> {
+                            ps.setTimestamp(1, Timestamp.valueOf(entry.getKey().bucket));
+                            ps.setInt(2, entry.getKey().appId);
+                            ps.setInt(3, entry.getKey().uriId);
+                            ps.setLong(4, entry.getValue());
+                        });
+            }
+        }
+    }
+
+    public void getHits(List<BucketRange> ranges, List<Integer> uriIds, Consumer<HitCount> consumer) {
+        if (ranges.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("uriIds", uriIds);
+        StringBuilder sql = new StringBuilder("select app_id, uri_id, sum(hits) as hits from (");
+        for (int i = 0; i < ranges.size(); i++) {
+            BucketRange range = ranges.get(i);
+            if (i > 0) {
+                sql.append(" union all ");
+            }
+            if (range.isRaw()) {
+                sql.append("select app_id, uri_id, count(*) as hits from stats where created >= :from").append(i)
+                        .append(" and created < :to").append(i);
+            } else {
+                sql.append("select app_id, uri_id, hits from ").append(range.getGranularity().getTable())
+                        .append(" where bucket >= :from").append(i).append(" and bucket < :to").append(i);
+            }
+            if (uriIds != null) {
+                sql.append(" and uri_id in (:uriIds)");
+            }
+            if (range.isRaw()) {
+                sql.append(" group by app_id, uri_id");
+            }
+            params.addValue("from" + i, Timestamp.valueOf(range.getFrom()));
+            params.addValue("to" + i, Timestamp.valueOf(range.getTo()));
+        }
+        sql.append(") parts group by app_id, uri_id order by hits desc");
+        cursorTemplate.query(sql.toString(), params, rs -> {
+            consumer.accept(new HitCount(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits")));
+        });
+    }
+
+    public Map<AppUri, HyperLogLog> getSketches(List<BucketRange> ranges, List<Integer> uriIds) {
+        Map<AppUri, HyperLogLog> sketches = new HashMap<>();
+        if (ranges.isEmpty()) {
+            return sketches;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("uriIds", uriIds);
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < ranges.size(); i++) {
+            BucketRange range = ranges.get(i);
+            if (i > 0) {
+                sql.append(" union all ");
+            }
+            if (range.isRaw()) {
+                sql.append("select distinct app_id, uri_id, cast(null as bytea) as sketch, ip from stats where created >= :from")
+                        .append(i).append(" and created < :to").append(i).append(" and ip is not null");
+            } else {
+                sql.append("select app_id, uri_id, sketch, cast(null as bytea) as ip from ")
+                        .append(range.getGranularity().getTable())
+                        .append(" where bucket >= :from").append(i).append(" and bucket < :to").append(i)
+                        .append(" and sketch is not null");
+            }
+            if (uriIds != null) {
+                sql.append(" and uri_id in (:uriIds)");
+            }
+            params.addValue("from" + i, Timestamp.valueOf(range.getFrom()));
+            params.addValue("to" + i, Timestamp.valueOf(range.getTo()));
+        }
+        cursorTemplate.query(sql.toString(), params, rs -> {
+            AppUri key = new AppUri(rs.getInt("app_id"), rs.getInt("uri_id"));
+            byte[] stored = rs.getBytes("sketch");
+            if (stored != null) {
+                sketches.merge(key, HyperLogLog.fromBytes(stored), HyperLogLog::union);
+            } else {
+                // raw rows add into the sketch already held for the key instead of allocating one per ip
+                sketches.computeIfAbsent(key, k -> new HyperLogLog(precision)).add(rs.getBytes("ip"));
+            }
+        });
+        return sketches;
+    }
+
+    public Map<SeriesKey, Long> getSeries(List<BucketRange> ranges, List<Integer> uriIds, Granularity interval) {
+        Map<SeriesKey, Long> series = new LinkedHashMap<>();
+        if (ranges.isEmpty()) {
+            return series;
+        }
+        String unit = interval.name().toLowerCase();
+        MapSqlParameterSource params = new MapSqlParameterSource("uriIds", uriIds);
+        StringBuilder sql = new StringBuilder("select date_trunc('").append(unit)
+                .append("', bucket) as bucket, app_id, uri_id, sum(hits) as hits from (");
+        for (int i = 0; i < ranges.size(); i++) {
+            BucketRange range = ranges.get(i);
+            if (i > 0) {
+                sql.append(" union all ");
+            }
+            if (range.isRaw()) {
+                sql.append("select date_trunc('").append(unit).append("', created) as bucket, app_id, uri_id, count(*) as hits ")
+                        .append("from stats where created >= :from").append(i).append(" and created < :to").append(i);
+            } else {
+                sql.append("select bucket, app_id, uri_id, hits from ").append(range.getGranularity().getTable())
+                        .append(" where bucket >= :from").append(i).append(" and bucket < :to").append(i);
+            }
+            if (uriIds != null) {
+                sql.append(" and uri_id in (:uriIds)");
+            }
+            if (range.isRaw()) {
+                sql.append(" group by 1, 2, 3");
+            }
+            params.addValue("from" + i, Timestamp.valueOf(range.getFrom()));
+            params.addValue("to" + i, Timestamp.valueOf(range.getTo()));
+        }
+        sql.append(") parts group by 1, 2, 3 order by app_id, uri_id, bucket");
+        cursorTemplate.query(sql.toString(), params, rs -> {
+            series.put(new SeriesKey(rs.getTimestamp("bucket").toLocalDateTime(), rs.getInt("app_id"), rs.getInt("uri_id")),
+                    rs.getLong("hits"));
+        });
+        return series;
+    }
+
+    public Map<SeriesKey, HyperLogLog> getSeriesSketches(List<BucketRange> ranges, List<Integer> uriIds, Granularity interval) {
+        Map<SeriesKey, HyperLogLog> series = new HashMap<>();
+        if (ranges.isEmpty()) {
+            return series;
+        }
+        String unit = interval.name().toLowerCase();
+        MapSqlParameterSource params = new MapSqlParameterSource("uriIds", uriIds);
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < ranges.size(); i++) {
+            BucketRange range = ranges.get(i);
+            if (i > 0) {
+                sql.append(" union all ");
+            }
+            if (range.isRaw()) {
+                sql.append("select distinct date_trunc('").append(unit).append("', created) as bucket, app_id, uri_id, ")
+                        .append("cast(null as bytea) as sketch, ip from stats where created >= :from").append(i)
+                        .append(" and created < :to").append(i).append(" and ip is not null");
+            } else {
+                sql.append("select date_trunc('").append(unit).append("', bucket) as bucket, app_id, uri_id, sketch, ")
+                        .append("cast(null as bytea) as ip from ").append(range.getGranularity().getTable())
+                        .append(" where bucket >= :from").append(i).append(" and bucket < :to").append(i)
+                        .append(" and sketch is not null");
+            }
+            if (uriIds != null) {
+                sql.append(" and uri_id in (:uriIds)");
+            }
+            params.addValue("from" + i, Timestamp.valueOf(range.getFrom()));
+            params.addValue("to" + i, Timestamp.valueOf(range.getTo()));
+        }
+        cursorTemplate.query(sql.toString(), params, rs -> {
+            SeriesKey key = new SeriesKey(rs.getTimestamp("bucket").toLocalDateTime(), rs.getInt("app_id"), rs.getInt("uri_id"));
+            byte[] stored = rs.getBytes("sketch");
+            if (stored != null) {
+                series.merge(key, HyperLogLog.fromBytes(stored), HyperLogLog::union);
+            } else {
+                // raw rows add into the sketch already held for the key instead of allocating one per ip
+                series.computeIfAbsent(key, k -> new HyperLogLog(precision)).add(rs.getBytes("ip"));
+            }
+        });
+        return series;
+    }
+
+    @Transactional
+    public int backfillSketches(Granularity granularity, int limit) {
+        String table = granularity.getTable();
+        List<Key> keys = jdbcTemplate.query("select bucket, app_id, uri_id from " + table +
+                        " where sketch is null order by bucket, app_id, uri_id limit ? for update skip locked",
+                (rs, rowNum) -> new Key(rs.getTimestamp("bucket").toLocalDateTime(), rs.getInt("app_id"), rs.getInt("uri_id")),
+                limit);
+        List<Object[]> updates = new ArrayList<>(keys.size());
+        for (Key key : keys) {
+            updates.add(new Object[]{rawSketch(granularity, key).toBytes(), Timestamp.valueOf(key.bucket), key.appId, key.uriId});
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("update " + table + " set sketch = ? where bucket = ? and app_id = ? and uri_id = ?", updates);
+        }
+        return keys.size();
+    }
+
+    // New rows are inserted with the batch's sketch, so only the keys that already existed come back
+    private List<Key> upsertSketched(Granularity granularity, Map<Key, Long> counts, Map<Key, HyperLogLog> sketches) {
+        String table = granularity.getTable();
+        List<Key> keys = new ArrayList<>(counts.keySet());
+        List<Key> existing = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += KEYS_PER_SELECT) {
+            List<Key> chunk = keys.subList(from, Math.min(from + KEYS_PER_SELECT, keys.size()));
+            StringBuilder sql = new StringBuilder("insert into ").append(table)
+                    .append(" (bucket, app_id, uri_id, hits, sketch) values ");
+            Object[] args = new Object[chunk.size() * 5];
+            for (int i = 0; i < chunk.size(); i++) {
+                Key key = chunk.get(i);
+                sql.append(i == 0 ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+                args[5 * i] = Timestamp.valueOf(key.bucket);
+                args[5 * i + 1] = key.appId;
+                args[5 * i + 2] = key.uriId;
+                args[5 * i + 3] = counts.get(key);
+                args[5 * i + 4] = sketches.get(key).toBytes();
+            }
+            sql.append(" on conflict (bucket, app_id, uri_id) do update set hits = ").append(table)
+                    .append(".hits + excluded.hits returning bucket, app_id, uri_id, (xmax = 0) as inserted");
+            jdbcTemplate.query(sql.toString(), rs -> {
+                if (!rs.getBoolean("inserted")) {
+                    existing.add(new Key(rs.getTimestamp("bucket").toLocalDateTime(), rs.getInt("app_id"), rs.getInt("uri_id")));
+                }
+            }, args);
+        }
+        return existing;
+    }
+
+    // The count upsert above already holds the row locks, so this read-merge-write cannot lose updates.
+    // A row whose sketch is still null is a legacy bucket: it is left to the startup backfill, which rebuilds it
+    // from the raw rows that already include this batch. A sketch the batch does not change is not rewritten.
+    private void mergeSketches(Granularity granularity, List<Key> keys, Map<Key, HyperLogLog> sketches) {
+        String table = granularity.getTable();
+        List<Object[]> updates = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += KEYS_PER_SELECT) {
+            List<Key> chunk = keys.subList(from, Math.min(from + KEYS_PER_SELECT, keys.size()));
+            StringBuilder sql = new StringBuilder("select bucket, app_id, uri_id, sketch from ").append(table)
+                    .append(" where (bucket, app_id, uri_id) in (");
+            Object[] args = new Object[chunk.size() * 3];
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+                args[3 * i] = Timestamp.valueOf(chunk.get(i).bucket);
+                args[3 * i + 1] = chunk.get(i).appId;
+                args[3 * i + 2] = chunk.get(i).uriId;
+            }
+            jdbcTemplate.query(sql.append(")").toString(), rs -> {
+                byte[] stored = rs.getBytes("sketch");
+                if (stored == null) {
+                    return;
+                }
+                Timestamp bucket = rs.getTimestamp("bucket");
+                Key key = new Key(bucket.toLocalDateTime(), rs.getInt("app_id"), rs.getInt("uri_id"));
+                byte[] merged = HyperLogLog.union(HyperLogLog.fromBytes(stored), sketches.get(key)).toBytes();
+                if (!Arrays.equals(stored, merged)) {
+                    updates.add(new Object[]{merged, bucket, key.appId, key.uriId});
+                }
+            }, args);
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("update " + table + " set sketch = ? where bucket = ? and app_id = ? and uri_id = ?", updates);
+        }
+    }
+
+    private HyperLogLog rawSketch(Granularity granularity, Key key) {
+        HyperLogLog sketch = new HyperLogLog(precision);
+        jdbcTemplate.query("select distinct ip from stats where created >= ? and created < ? " +
+                        "and app_id = ? and uri_id = ? and ip is not null",
+                rs -> {
+                    sketch.add(rs.getBytes("ip"));
+                },
+                Timestamp.valueOf(key.bucket), Timestamp.valueOf(key.bucket.plus(1, granularity.getUnit())),
+                key.appId, key.uriId);
+        return sketch;
+    }
+
+    private static final class Key implements Comparable<Key> {
+        private static final Comparator<Key> ORDER = Comparator.<Key, LocalDateTime>comparing(k -> k.bucket)
+                .thenComparingInt(k -> k.appId)
+                .thenComparingInt(k -> k.uriId);
+
+        private final LocalDateTime bucket;
+        private final int appId;
+        private final int uriId;
+
+        private Key(LocalDateTime bucket, int appId, int uriId) {
+            this.bucket = bucket;
+            this.appId = appId;
+            this.uriId = uriId;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            return ORDER.compare(this, other);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.wal.WalPosition;
+
+import java.util.List;
+import java.util.Optional;
+
+// One checkpoint per WAL directory, keyed by the id the directory keeps on disk
+@Repository
+@RequiredArgsConstructor
+public class WalCheckpointRepository {
+    private static final int LEGACY_ID = 1;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public Optional<WalPosition> find(String walId) {
+        List<WalPosition> positions = jdbcTemplate.query("select segment, position from wal_checkpoint where wal_id = ?",
+                (rs, rowNum) -> new WalPosition(rs.getLong("segment"), rs.getLong("position")), walId);
+        return positions.stream().findFirst();
+    }
+
+    // Moves the single checkpoint row of the old layout over to the given WAL in one statement,
+    // so that only one directory can take it and it is never lost in between
+    public Optional<WalPosition> claimLegacy(String walId) {
+        Boolean exists = jdbcTemplate.queryForObject("select to_regclass('wal_checkpoint_legacy') is not null", Boolean.class);
+        if (!Boolean.TRUE.equals(exists)) {
+            return Optional.empty();
+        }
+        List<WalPosition> positions = jdbcTemplate.query("with legacy as (delete from wal_checkpoint_legacy where id = ? " +
+                        "returning segment, position) insert into wal_checkpoint (wal_id, segment, position) " +
+                        "select ?, segment, position from legacy returning segment, position",
+                (rs, rowNum) -> new WalPosition(rs.getLong("segment"), rs.getLong("position")), LEGACY_ID, walId);
+        return positions.stream().findFirst();
+    }
+
+    // Must run in the transaction that applies the records so that a replay never applies them twice
+    public void save(String walId, WalPosition position) {
+        jdbcTemplate.update("insert into wal_checkpoint (wal_id, segment, position) values (?, ?, ?) " +
+                        "on conflict (wal_id) do update set segment = excluded.segment, position = excluded.position",
+                walId, position.getSegment(), position.getOffset());
+    }
+}
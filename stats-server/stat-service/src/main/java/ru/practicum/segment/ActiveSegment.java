@@ -0,0 +1,117 @@
+package ru.practicum.segment;
+
+import ru.practicum.model.Hit;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// The segment being filled, kept on heap in arrival order until it is sealed and backed by its log meanwhile.
+// Once full it is no longer written, so it can be scanned without the store lock while it is being sealed.
+class ActiveSegment {
+    private final long sequence;
+    private final int capacity;
+    private final Path logPath;
+    private SegmentLog log;
+    private long[] times;
+    private int[] appIds;
+    private int[] uriIds;
+    private byte[][] ips;
+    private int size;
+
+    private ActiveSegment(long sequence, int capacity, Path logPath) {
+        this.sequence = sequence;
+        this.capacity = capacity;
+        this.logPath = logPath;
+        this.times = new long[capacity];
+        this.appIds = new int[capacity];
+        this.uriIds = new int[capacity];
+        this.ips = new byte[capacity][];
+    }
+
+    static ActiveSegment create(long sequence, int capacity, Path logPath) throws IOException {
+        ActiveSegment segment = new ActiveSegment(sequence, capacity, logPath);
+        segment.log = SegmentLog.create(logPath);
+        return segment;
+    }
+
+    // A log written with a larger capacity is taken whole, the segment is then sealed as soon as it is handed on
+    static ActiveSegment recover(long sequence, int capacity, Path logPath) throws IOException {
+        ActiveSegment segment = new ActiveSegment(sequence, capacity, logPath);
+        long length = SegmentLog.replay(logPath, segment::add);
+        segment.log = SegmentLog.reopen(logPath, length);
+        return segment;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    boolean isFull() {
+        return size >= capacity;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int remaining() {
+        return Math.max(capacity - size, 0);
+    }
+
+    // Logged before the rows become visible, so nothing a query has seen is lost on a restart
+    void append(List<Hit> hits) throws IOException {
+        log.append(hits);
+        for (Hit hit : hits) {
+            add(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC), hit.getAppId(), hit.getUriId(), hit.getIp());
+        }
+    }
+
+    void scan(long from, long to, int[] uriFilter, SegmentAggregate aggregate) {
+        boolean withIps = aggregate.needsIps();
+        for (int i = 0; i < size; i++) {
+            if (times[i] >= from && times[i] < to && Segment.matches(uriFilter, uriIds[i])) {
+                aggregate.add(appIds[i], uriIds[i], withIps ? ips[i] : null);
+            }
+        }
+    }
+
+    void seal(FileChannel channel) throws IOException {
+        int[] order = IntStream.range(0, size).boxed()
+                .sorted(Comparator.comparingLong(i -> times[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        Segment.write(channel, times, appIds, uriIds, ips, order);
+    }
+
+    // Called once the sealed segment is in place
+    void deleteLog() throws IOException {
+        log.close();
+        Files.deleteIfExists(logPath);
+    }
+
+    void closeLog() throws IOException {
+        log.close();
+    }
+
+    private void add(long time, int appId, int uriId, byte[] ip) {
+        if (size == times.length) {
+            int grown = Math.max(times.length * 2, 16);
+            times = Arrays.copyOf(times, grown);
+            appIds = Arrays.copyOf(appIds, grown);
+            uriIds = Arrays.copyOf(uriIds, grown);
+            ips = Arrays.copyOf(ips, grown);
+        }
+        times[size] = time;
+        appIds[size] = appId;
+        uriIds[size] = uriId;
+        ips[size] = ip;
+        size++;
+    }
+}
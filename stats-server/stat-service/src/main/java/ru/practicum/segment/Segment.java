@@ -0,0 +1,132 @@
+package ru.practicum.segment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Sealed, time-sorted, memory-mapped segment: header, then one column after another
+class Segment {
+    static final int MAGIC = 0x48534547;
+    static final int HEADER_BYTES = 32;
+    static final int IP_BYTES = 16;
+    static final int ROW_BYTES = Long.BYTES + Integer.BYTES + Integer.BYTES + 1 + IP_BYTES;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int rows;
+    private final long minTime;
+    private final long maxTime;
+
+    private Segment(Path path, MappedByteBuffer buffer) {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IllegalStateException("Not a segment file: " + path);
+        }
+        this.path = path;
+        this.buffer = buffer;
+        this.rows = buffer.getInt(4);
+        this.minTime = buffer.getLong(8);
+        this.maxTime = buffer.getLong(16);
+    }
+
+    static Segment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    static void write(FileChannel channel, long[] times, int[] appIds, int[] uriIds, byte[][] ips, int[] order) throws IOException {
+        int rows = order.length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + rows * ROW_BYTES);
+        buffer.putInt(MAGIC).putInt(rows)
+                .putLong(rows == 0 ? 0 : times[order[0]])
+                .putLong(rows == 0 ? 0 : times[order[rows - 1]]);
+        buffer.position(HEADER_BYTES);
+        for (int i : order) {
+            buffer.putLong(times[i]);
+        }
+        for (int i : order) {
+            buffer.putInt(appIds[i]);
+        }
+        for (int i : order) {
+            buffer.putInt(uriIds[i]);
+        }
+        for (int i : order) {
+            buffer.put((byte) (ips[i] == null ? 0 : ips[i].length));
+        }
+        for (int i : order) {
+            int start = buffer.position();
+            if (ips[i] != null) {
+                buffer.put(ips[i]);
+            }
+            buffer.position(start + IP_BYTES);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(true);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    boolean overlaps(long from, long to) {
+        return rows > 0 && minTime < to && maxTime >= from;
+    }
+
+    boolean endsBefore(long time) {
+        return rows == 0 || maxTime < time;
+    }
+
+    // The ip columns are only read when the aggregate counts distinct ips
+    void scan(long from, long to, int[] uriFilter, SegmentAggregate aggregate) {
+        int appColumn = HEADER_BYTES + rows * Long.BYTES;
+        int uriColumn = appColumn + rows * Integer.BYTES;
+        int ipLengthColumn = uriColumn + rows * Integer.BYTES;
+        int ipColumn = ipLengthColumn + rows;
+        boolean withIps = aggregate.needsIps();
+        ByteBuffer ips = withIps ? buffer.duplicate() : null;
+        int end = lowerBound(to);
+        for (int i = lowerBound(from); i < end; i++) {
+            int uriId = buffer.getInt(uriColumn + i * Integer.BYTES);
+            if (!matches(uriFilter, uriId)) {
+                continue;
+            }
+            byte[] ip = null;
+            if (withIps) {
+                int ipLength = buffer.get(ipLengthColumn + i);
+                if (ipLength > 0) {
+                    ip = new byte[ipLength];
+                    ips.position(ipColumn + i * IP_BYTES);
+                    ips.get(ip);
+                }
+            }
+            aggregate.add(buffer.getInt(appColumn + i * Integer.BYTES), uriId, ip);
+        }
+    }
+
+    // The filter is sorted, null lets every uri through
+    static boolean matches(int[] uriFilter, int uriId) {
+        return uriFilter == null || Arrays.binarySearch(uriFilter, uriId) >= 0;
+    }
+
+    // first row whose time is not before the given one, the time column is sorted on seal
+    private int lowerBound(long time) {
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getLong(HEADER_BYTES + mid * Long.BYTES) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
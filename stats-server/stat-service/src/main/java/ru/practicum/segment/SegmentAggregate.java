@@ -0,0 +1,67 @@
+package ru.practicum.segment;
+
+import ru.practicum.model.HitCount;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+class SegmentAggregate {
+    private final boolean unique;
+    private final boolean exact;
+    private final int precision;
+    private final Map<Long, long[]> counts = new HashMap<>();
+    private final Map<Long, Set<ByteBuffer>> ips = new HashMap<>();
+    private final Map<Long, HyperLogLog> sketches = new HashMap<>();
+
+    SegmentAggregate(boolean unique, boolean exact, int precision) {
+        this.unique = unique;
+        this.exact = exact;
+        this.precision = precision;
+    }
+
+    boolean needsIps() {
+        return unique;
+    }
+
+    void add(int appId, int uriId, byte[] ip) {
+        long key = ((long) appId << 32) | (uriId & 0xffffffffL);
+        if (!unique) {
+            counts.computeIfAbsent(key, k -> new long[1])[0]++;
+        } else if (exact) {
+            Set<ByteBuffer> distinct = ips.computeIfAbsent(key, k -> new HashSet<>());
+            if (ip != null) {
+                distinct.add(ByteBuffer.wrap(ip));
+            }
+        } else {
+            HyperLogLog sketch = sketches.computeIfAbsent(key, k -> new HyperLogLog(precision));
+            if (ip != null) {
+                sketch.add(ip);
+            }
+        }
+    }
+
+    SegmentAggregate merge(SegmentAggregate other) {
+        other.counts.forEach((key, count) -> counts.computeIfAbsent(key, k -> new long[1])[0] += count[0]);
+        other.ips.forEach((key, distinct) -> ips.computeIfAbsent(key, k -> new HashSet<>()).addAll(distinct));
+        other.sketches.forEach((key, sketch) -> sketches.merge(key, sketch, HyperLogLog::union));
+        return this;
+    }
+
+    List<HitCount> result() {
+        Map<Long, Long> hits = new HashMap<>();
+        counts.forEach((key, count) -> hits.put(key, count[0]));
+        ips.forEach((key, distinct) -> hits.put(key, (long) distinct.size()));
+        sketches.forEach((key, sketch) -> hits.put(key, sketch.estimate()));
+        return hits.entrySet().stream()
+                .map(entry -> new HitCount((int) (entry.getKey() >>> 32), entry.getKey().intValue(), entry.getValue()))
+                .sorted(Comparator.comparing(HitCount::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+}
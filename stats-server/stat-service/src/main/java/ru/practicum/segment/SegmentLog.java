@@ -0,0 +1,110 @@
+package ru.practicum.segment;
+
+import ru.practicum.model.Hit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Fsynced record of the rows appended to the active segment, replayed into it after a restart.
+// Each batch is one length and CRC framed record, so a torn tail is recognised and cut off.
+class SegmentLog implements Closeable {
+    private static final int RECORD_HEADER = 2 * Integer.BYTES;
+    private static final int ROW_HEADER = Long.BYTES + Integer.BYTES + Integer.BYTES + 1;
+
+    private final FileChannel channel;
+
+    private SegmentLog(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    static SegmentLog create(Path path) throws IOException {
+        return new SegmentLog(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE));
+    }
+
+    // Reopened after a replay, dropping whatever followed the last complete record
+    static SegmentLog reopen(Path path, long length) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        channel.truncate(length);
+        channel.position(length);
+        return new SegmentLog(channel);
+    }
+
+    // Feeds the rows of every complete record to the sink and returns the length those records take
+    static long replay(Path path, RowSink sink) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        CRC32 crc = new CRC32();
+        long length = 0;
+        while (buffer.remaining() >= RECORD_HEADER) {
+            int payloadLength = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (payloadLength < 0 || payloadLength > buffer.remaining()) {
+                break;
+            }
+            ByteBuffer payload = buffer.slice();
+            payload.limit(payloadLength);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            while (payload.hasRemaining()) {
+                long time = payload.getLong();
+                int appId = payload.getInt();
+                int uriId = payload.getInt();
+                int ipLength = payload.get();
+                byte[] ip = null;
+                if (ipLength > 0) {
+                    ip = new byte[ipLength];
+                    payload.get(ip);
+                }
+                sink.add(time, appId, uriId, ip);
+            }
+            buffer.position(buffer.position() + payloadLength);
+            length = buffer.position();
+        }
+        return length;
+    }
+
+    void append(List<Hit> hits) throws IOException {
+        int payloadLength = 0;
+        for (Hit hit : hits) {
+            payloadLength += ROW_HEADER + (hit.getIp() == null ? 0 : hit.getIp().length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + payloadLength);
+        buffer.position(RECORD_HEADER);
+        for (Hit hit : hits) {
+            buffer.putLong(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC))
+                    .putInt(hit.getAppId())
+                    .putInt(hit.getUriId())
+                    .put((byte) (hit.getIp() == null ? 0 : hit.getIp().length));
+            if (hit.getIp() != null) {
+                buffer.put(hit.getIp());
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), RECORD_HEADER, payloadLength);
+        buffer.putInt(0, payloadLength).putInt(Integer.BYTES, (int) crc.getValue()).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    interface RowSink {
+        void add(long time, int appId, int uriId, byte[] ip);
+    }
+}
@@ -0,0 +1,259 @@
+package ru.practicum.segment;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.Hit;
+import ru.practicum.model.HitCount;
+import ru.practicum.sketch.HyperLogLog;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "segments")
+public class SegmentStore {
+    private static final String SUFFIX = ".seg";
+    private static final String LOG_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int rowsPerSegment;
+    private final int retentionDays;
+    private final int precision;
+    private final ForkJoinPool scanPool;
+    private final ExecutorService sealer;
+    private final List<Segment> sealed = new CopyOnWriteArrayList<>();
+    // Full segments handed to the sealer, still scanned from memory until their file is in place
+    private final List<ActiveSegment> sealing = new ArrayList<>();
+    private ActiveSegment active;
+    private long nextSequence;
+
+    public SegmentStore(MeterRegistry meterRegistry,
+                        @Value("${stats.segment.dir:segments}") String directory,
+                        @Value("${stats.segment.rows:1048576}") int rowsPerSegment,
+                        @Value("${stats.segment.scan-threads:4}") int scanThreads,
+                        @Value("${stats.segment.retention-days:0}") int retentionDays,
+                        @Value("${stats.unique.relative-error:0.02}") double relativeError) {
+        this.directory = Paths.get(directory);
+        this.rowsPerSegment = rowsPerSegment;
+        this.retentionDays = retentionDays;
+        this.precision = HyperLogLog.precisionFor(relativeError);
+        this.scanPool = new ForkJoinPool(scanThreads);
+        this.sealer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "segment-sealer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("stats.segment.count", sealed, List::size).register(meterRegistry);
+    }
+
+    // A log without its sealed segment holds rows that were appended but never sealed, they are replayed.
+    // Only the newest one can still be filled; older ones were being sealed when the process stopped.
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        for (Path file : list(SUFFIX)) {
+            sealed.add(Segment.open(file));
+            nextSequence = Math.max(nextSequence, sequenceOf(file, SUFFIX) + 1);
+        }
+        for (Path file : list(LOG_SUFFIX)) {
+            long sequence = sequenceOf(file, LOG_SUFFIX);
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            if (Files.exists(segmentPath(sequence))) {
+                Files.delete(file);
+                continue;
+            }
+            if (active != null) {
+                sealed.add(write(active));
+                active.deleteLog();
+            }
+            active = ActiveSegment.recover(sequence, rowsPerSegment, file);
+        }
+        if (active == null) {
+            active = ActiveSegment.create(nextSequence, rowsPerSegment, logPath(nextSequence++));
+        } else if (active.isFull()) {
+            sealed.add(write(active));
+            active.deleteLog();
+            active = ActiveSegment.create(nextSequence, rowsPerSegment, logPath(nextSequence++));
+        }
+        log.info("Opened {} sealed segments in {}", sealed.size(), directory.toAbsolutePath());
+    }
+
+    // The active segment stays behind in its log and is replayed on the next start
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        scanPool.shutdown();
+        sealer.shutdown();
+        sealer.awaitTermination(1, TimeUnit.MINUTES);
+        synchronized (this) {
+            active.closeLog();
+        }
+    }
+
+    public synchronized void append(List<Hit> hits) {
+        try {
+            int from = 0;
+            while (from < hits.size()) {
+                if (active.isFull()) {
+                    handOff();
+                }
+                int to = Math.min(hits.size(), from + active.remaining());
+                active.append(hits.subList(from, to));
+                from = to;
+            }
+            if (active.isFull()) {
+                handOff();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public List<HitCount> scan(LocalDateTime start, LocalDateTime end, List<Integer> uriIds, boolean unique, boolean exact) {
+        long from = toEpochSecond(start);
+        long to = toEpochSecond(end);
+        int[] uriFilter = uriIds == null ? null : uriIds.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+        SegmentAggregate recent = new SegmentAggregate(unique, exact, precision);
+        List<Segment> overlapping;
+        List<ActiveSegment> pending;
+        // one snapshot, so a segment moving from sealing to sealed is counted exactly once
+        synchronized (this) {
+            overlapping = sealed.stream()
+                    .filter(segment -> segment.overlaps(from, to))
+                    .collect(Collectors.toList());
+            pending = new ArrayList<>(sealing);
+            active.scan(from, to, uriFilter, recent);
+        }
+        for (ActiveSegment segment : pending) {
+            segment.scan(from, to, uriFilter, recent);
+        }
+        SegmentAggregate result;
+        try {
+            result = scanPool.submit(() -> overlapping.parallelStream()
+                    .map(segment -> {
+                        SegmentAggregate aggregate = new SegmentAggregate(unique, exact, precision);
+                        segment.scan(from, to, uriFilter, aggregate);
+                        return aggregate;
+                    })
+                    .reduce(SegmentAggregate::merge)
+                    .orElseGet(() -> new SegmentAggregate(unique, exact, precision))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Сканирование сегментов прервано", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка сканирования сегментов", e.getCause());
+        }
+        return result.merge(recent).result();
+    }
+
+    // Whole segments are dropped once their newest row is past the retention
+    @Scheduled(fixedDelayString = "${stats.segment.check-interval:PT1H}")
+    public void expire() {
+        if (retentionDays <= 0) {
+            return;
+        }
+        long keepFrom = toEpochSecond(LocalDate.now().minusDays(retentionDays).atStartOfDay());
+        List<Segment> expired;
+        synchronized (this) {
+            expired = sealed.stream()
+                    .filter(segment -> segment.endsBefore(keepFrom))
+                    .collect(Collectors.toList());
+            sealed.removeAll(expired);
+        }
+        for (Segment segment : expired) {
+            try {
+                Files.deleteIfExists(segment.getPath());
+            } catch (IOException e) {
+                log.warn("Could not delete expired segment {}", segment.getPath(), e);
+            }
+        }
+        if (!expired.isEmpty()) {
+            log.info("Dropped {} segments older than {} days", expired.size(), retentionDays);
+        }
+    }
+
+    // Sorting and writing a full segment happens on the sealer, appends only swap in a fresh one
+    private void handOff() throws IOException {
+        ActiveSegment full = active;
+        active = ActiveSegment.create(nextSequence, rowsPerSegment, logPath(nextSequence++));
+        sealing.add(full);
+        sealer.execute(() -> seal(full));
+    }
+
+    // A segment that fails to seal stays in memory and in its log, and is sealed again on the next start
+    private void seal(ActiveSegment full) {
+        try {
+            Segment segment = write(full);
+            synchronized (this) {
+                sealed.add(segment);
+                sealing.remove(full);
+            }
+            full.deleteLog();
+        } catch (IOException e) {
+            log.error("Could not seal segment {}", full.getSequence(), e);
+        }
+    }
+
+    // Written to a temporary file first so a crash never leaves a truncated segment behind
+    private Segment write(ActiveSegment segment) throws IOException {
+        Path target = segmentPath(segment.getSequence());
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            segment.seal(channel);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        return Segment.open(target);
+    }
+
+    private List<Path> list(String suffix) throws IOException {
+        try (Stream<Path> list = Files.list(directory)) {
+            return list.filter(path -> path.getFileName().toString().endsWith(suffix))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%020d%s", sequence, SUFFIX));
+    }
+
+    private Path logPath(long sequence) {
+        return directory.resolve(String.format("%020d%s", sequence, LOG_SUFFIX));
+    }
+
+    private static long sequenceOf(Path file, String suffix) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - suffix.length()));
+    }
+
+    private static long toEpochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+}
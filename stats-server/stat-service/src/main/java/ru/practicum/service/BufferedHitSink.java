@@ -0,0 +1,183 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.exeption.OverloadException;
+import ru.practicum.exeption.ValidationException;
+import ru.practicum.model.Hit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "buffered")
+public class BufferedHitSink implements HitSink {
+    private static final long MAX_RETRY_BACKOFF_MS = 5_000;
+
+    private final HitWriter hitWriter;
+    private final BlockingQueue<Hit> buffer;
+    // free slots of the buffer, a batch reserves all of its slots before any of its hits is queued
+    private final Semaphore free;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final Timer flushTimer;
+    private final DistributionSummary flushSize;
+    private final Counter rejected;
+    private final Thread writerThread;
+    private volatile boolean running;
+
+    public BufferedHitSink(HitWriter hitWriter,
+                           MeterRegistry meterRegistry,
+                           @Value("${stats.ingest.buffer.capacity:65536}") int capacity,
+                           @Value("${stats.ingest.batch-size:500}") int batchSize,
+                           @Value("${stats.ingest.buffer.flush-interval:200ms}") Duration flushInterval,
+                           @Value("${stats.ingest.buffer.overflow:reject}") OverflowPolicy overflowPolicy,
+                           @Value("${stats.ingest.buffer.block-timeout:1s}") Duration blockTimeout) {
+        this.hitWriter = hitWriter;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.free = new Semaphore(capacity);
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = blockTimeout.toNanos();
+        Gauge.builder("stats.ingest.buffer.depth", buffer, BlockingQueue::size).register(meterRegistry);
+        this.flushTimer = Timer.builder("stats.ingest.buffer.flush").register(meterRegistry);
+        this.flushSize = DistributionSummary.builder("stats.ingest.buffer.flush.size").register(meterRegistry);
+        this.rejected = Counter.builder("stats.ingest.buffer.rejected").register(meterRegistry);
+        this.writerThread = new Thread(this::drainLoop, "hit-writer");
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writerThread.interrupt();
+        writerThread.join();
+    }
+
+    // All or nothing, so a 503 never leaves part of the batch queued for the client's retry to duplicate
+    @Override
+    public void accept(List<Hit> hits) {
+        if (hits.size() > capacity) {
+            throw new ValidationException("Пакет больше буфера статистики: " + hits.size() + " > " + capacity);
+        }
+        if (!reserve(hits.size())) {
+            rejected.increment();
+            throw new OverloadException("Буфер статистики переполнен");
+        }
+        // the reserved slots guarantee room for every hit
+        buffer.addAll(hits);
+    }
+
+    private boolean reserve(int slots) {
+        if (overflowPolicy == OverflowPolicy.REJECT) {
+            return free.tryAcquire(slots);
+        }
+        try {
+            return free.tryAcquire(slots, blockTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void drainLoop() {
+        List<Hit> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                if (running) {
+                    continue;
+                }
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+            }
+        }
+        buffer.drainTo(batch);
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+    }
+
+    private void collect(List<Hit> batch) throws InterruptedException {
+        int queued = batch.size();
+        try {
+            Hit head = buffer.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+            if (head == null) {
+                return;
+            }
+            batch.add(head);
+            long deadline = System.nanoTime() + flushIntervalNanos;
+            while (batch.size() < batchSize) {
+                buffer.drainTo(batch, batchSize - batch.size());
+                long remaining = deadline - System.nanoTime();
+                if (batch.size() >= batchSize || remaining <= 0) {
+                    return;
+                }
+                Hit next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+                batch.add(next);
+            }
+        } finally {
+            free.release(batch.size() - queued);
+        }
+    }
+
+    private void flush(List<Hit> batch) {
+        long backoff = 100;
+        while (true) {
+            try {
+                flushTimer.record(() -> hitWriter.write(batch));
+                flushSize.record(batch.size());
+                batch.clear();
+                return;
+            } catch (RuntimeException e) {
+                if (!running) {
+                    log.error("Не удалось записать {} хитов при остановке", batch.size(), e);
+                    batch.clear();
+                    return;
+                }
+                log.warn("Ошибка записи {} хитов, повтор через {} мс", batch.size(), backoff, e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ignored) {
+                    // stop() interrupts the writer; the loop re-checks running
+                }
+                backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MS);
+            }
+        }
+    }
+
+    public enum OverflowPolicy {
+        REJECT,
+        BLOCK
+    }
+}
@@ -0,0 +1,108 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.Granularity;
+import ru.practicum.repository.CompactionRepository;
+import ru.practicum.repository.RollupRepository;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+// Raw hits older than the retention are folded into the rollups and removed chunk by chunk.
+// Before the horizon only rollups remain, so queries snap their bounds there to whole buckets.
+@Slf4j
+@Component
+public class Compactor {
+    private static final int BUCKETS_PER_TRANSACTION = 100;
+
+    private final CompactionRepository compactionRepository;
+    private final RollupRepository rollupRepository;
+    private final int retentionDays;
+    private final int chunkSize;
+    private final Action action;
+    private volatile LocalDateTime horizon;
+
+    public Compactor(CompactionRepository compactionRepository,
+                     RollupRepository rollupRepository,
+                     @Value("${stats.compaction.retention-days:0}") int retentionDays,
+                     @Value("${stats.compaction.chunk-size:10000}") int chunkSize,
+                     @Value("${stats.compaction.action:delete}") Action action) {
+        this.compactionRepository = compactionRepository;
+        this.rollupRepository = rollupRepository;
+        this.retentionDays = retentionDays;
+        this.chunkSize = chunkSize;
+        this.action = action;
+    }
+
+    @PostConstruct
+    public void load() {
+        horizon = compactionRepository.findHorizon().orElse(null);
+    }
+
+    // Null while every raw hit is still kept
+    public LocalDateTime getHorizon() {
+        return horizon;
+    }
+
+    @Scheduled(fixedDelayString = "${stats.compaction.check-interval:PT1H}")
+    public void compact() {
+        // Another instance sharing the database may have moved it
+        compactionRepository.findHorizon().ifPresent(this::advance);
+        if (retentionDays <= 0) {
+            return;
+        }
+        if (!compactionRepository.runExclusively(this::compactOnce)) {
+            log.info("Сжатие статистики уже выполняется другим экземпляром");
+        }
+    }
+
+    private void compactOnce() {
+        LocalDateTime target = LocalDate.now().minusDays(retentionDays).atStartOfDay();
+        Optional<LocalDateTime> oldest = compactionRepository.findOldestHit(target);
+        if (oldest.isPresent()) {
+            for (LocalDateTime day = Granularity.DAY.floor(oldest.get()); day.isBefore(target); day = day.plusDays(1)) {
+                compactionRepository.fold(day, day.plusDays(1));
+            }
+            for (Granularity granularity : Granularity.values()) {
+                if (granularity.isSketched()) {
+                    while (rollupRepository.backfillSketches(granularity, BUCKETS_PER_TRANSACTION) > 0) {
+                        // unique queries before the horizon rely on the sketches
+                    }
+                }
+            }
+        }
+        // Published before the first delete so that no query reads a half-removed day
+        compactionRepository.saveHorizon(target);
+        advance(target);
+        if (oldest.isEmpty()) {
+            return;
+        }
+        long removed = 0;
+        for (LocalDateTime day = Granularity.DAY.floor(oldest.get()); day.isBefore(target); day = day.plusDays(1)) {
+            int chunk;
+            do {
+                chunk = action == Action.ARCHIVE
+                        ? compactionRepository.archiveChunk(day, day.plusDays(1), chunkSize)
+                        : compactionRepository.deleteChunk(day, day.plusDays(1), chunkSize);
+                removed += chunk;
+            } while (chunk > 0);
+        }
+        log.info("Сжатие статистики до {}: обработано {} строк", target, removed);
+    }
+
+    private synchronized void advance(LocalDateTime to) {
+        if (horizon == null || horizon.isBefore(to)) {
+            horizon = to;
+        }
+    }
+
+    public enum Action {
+        DELETE,
+        ARCHIVE
+    }
+}
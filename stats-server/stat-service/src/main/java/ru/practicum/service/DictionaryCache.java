@@ -0,0 +1,96 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.Dimension;
+import ru.practicum.model.Hit;
+import ru.practicum.repository.DictionaryRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@RequiredArgsConstructor
+public class DictionaryCache {
+    private final DictionaryRepository repository;
+    private final Map<Dimension, Map<String, Integer>> ids = newCache();
+    private final Map<Dimension, Map<Integer, String>> names = newCache();
+
+    public void assignIds(List<Hit> hits) {
+        Set<String> apps = new HashSet<>();
+        Set<String> uris = new HashSet<>();
+        for (Hit hit : hits) {
+            apps.add(hit.getApp());
+            uris.add(hit.getUri());
+        }
+        Map<String, Integer> appIds = intern(Dimension.APP, apps);
+        Map<String, Integer> uriIds = intern(Dimension.URI, uris);
+        for (Hit hit : hits) {
+            hit.setAppId(appIds.get(hit.getApp()));
+            hit.setUriId(uriIds.get(hit.getUri()));
+        }
+    }
+
+    public List<Integer> findIds(Dimension dimension, Collection<String> values) {
+        Map<String, Integer> cached = ids.get(dimension);
+        List<Integer> found = new ArrayList<>(values.size());
+        Set<String> missing = new HashSet<>();
+        for (String value : values) {
+            Integer id = cached.get(value);
+            if (id != null) {
+                found.add(id);
+            } else {
+                missing.add(value);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<String, Integer> loaded = repository.findIds(dimension, missing);
+            remember(dimension, loaded);
+            found.addAll(loaded.values());
+        }
+        return found;
+    }
+
+    public String name(Dimension dimension, int id) {
+        String name = names.get(dimension).get(id);
+        if (name == null) {
+            Map<Integer, String> loaded = repository.findNames(dimension, List.of(id));
+            loaded.forEach((loadedId, loadedName) -> remember(dimension, Map.of(loadedName, loadedId)));
+            name = loaded.get(id);
+        }
+        return name;
+    }
+
+    private Map<String, Integer> intern(Dimension dimension, Set<String> values) {
+        Map<String, Integer> cached = ids.get(dimension);
+        Set<String> missing = new HashSet<>();
+        for (String value : values) {
+            if (!cached.containsKey(value)) {
+                missing.add(value);
+            }
+        }
+        if (!missing.isEmpty()) {
+            remember(dimension, repository.intern(dimension, missing));
+        }
+        return cached;
+    }
+
+    private void remember(Dimension dimension, Map<String, Integer> loaded) {
+        ids.get(dimension).putAll(loaded);
+        loaded.forEach((name, id) -> names.get(dimension).put(id, name));
+    }
+
+    private static <K, V> Map<Dimension, Map<K, V>> newCache() {
+        Map<Dimension, Map<K, V>> cache = new EnumMap<>(Dimension.class);
+        for (Dimension dimension : Dimension.values()) {
+            cache.put(dimension, new ConcurrentHashMap<>());
+        }
+        return cache;
+    }
+}
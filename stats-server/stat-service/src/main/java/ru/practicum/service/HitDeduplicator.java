@@ -0,0 +1,114 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.Hit;
+import ru.practicum.sketch.BloomFilter;
+import ru.practicum.sketch.Hashing;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Drops repeated (app, uri, ip) hits with two Bloom filters that take turns: a hit counts as repeated
+// if either generation has seen it, so a key is remembered for at least one window and at most two.
+// Keys are only committed once the sink took the hits, so a rejected batch can be retried.
+@Component
+public class HitDeduplicator {
+    private final boolean enabled;
+    private final long windowNanos;
+    private final long expectedHits;
+    private final double falsePositiveRate;
+    private final Counter dropped;
+    private volatile BloomFilter current;
+    private volatile BloomFilter previous;
+    private volatile long rotatedAt;
+
+    public HitDeduplicator(MeterRegistry meterRegistry,
+                           @Value("${stats.dedup.enabled:false}") boolean enabled,
+                           @Value("${stats.dedup.window:1m}") Duration window,
+                           @Value("${stats.dedup.expected-hits:1000000}") long expectedHits,
+                           @Value("${stats.dedup.false-positive-rate:0.001}") double falsePositiveRate) {
+        this.enabled = enabled;
+        this.windowNanos = window.toNanos();
+        this.expectedHits = expectedHits;
+        this.falsePositiveRate = falsePositiveRate;
+        this.dropped = Counter.builder("stats.dedup.dropped").register(meterRegistry);
+        if (enabled) {
+            this.current = new BloomFilter(expectedHits, falsePositiveRate);
+            this.previous = new BloomFilter(expectedHits, falsePositiveRate);
+            this.rotatedAt = System.nanoTime();
+            Gauge.builder("stats.dedup.fill", this, deduplicator -> deduplicator.current.fillRatio()).register(meterRegistry);
+        }
+    }
+
+    public List<Hit> filter(List<Hit> hits) {
+        if (!enabled) {
+            return hits;
+        }
+        rotateIfDue();
+        List<Hit> unique = new ArrayList<>(hits.size());
+        Set<Long> batch = new HashSet<>();
+        for (Hit hit : hits) {
+            if (hit.getIp() == null) {
+                unique.add(hit);
+                continue;
+            }
+            long hash = hash(hit);
+            if (batch.add(hash) && !isRepeated(hash)) {
+                unique.add(hit);
+            }
+        }
+        if (unique.size() < hits.size()) {
+            dropped.increment(hits.size() - unique.size());
+        }
+        return unique;
+    }
+
+    // Called with the hits filter returned once the sink accepted them
+    public void commit(List<Hit> hits) {
+        if (!enabled) {
+            return;
+        }
+        BloomFilter filter = current;
+        for (Hit hit : hits) {
+            if (hit.getIp() != null) {
+                filter.put(hash(hit));
+            }
+        }
+    }
+
+    private boolean isRepeated(long hash) {
+        // a key seen only in the older generation is not copied forward, so it ages out with it
+        return previous.mightContain(hash) || current.mightContain(hash);
+    }
+
+    // A full generation is rotated early, past its capacity the false positive rate climbs quickly
+    private boolean isDue() {
+        return System.nanoTime() - rotatedAt >= windowNanos || current.fillRatio() >= 1;
+    }
+
+    private void rotateIfDue() {
+        if (!isDue()) {
+            return;
+        }
+        synchronized (this) {
+            if (isDue()) {
+                previous = current;
+                current = new BloomFilter(expectedHits, falsePositiveRate);
+                rotatedAt = System.nanoTime();
+            }
+        }
+    }
+
+    private static long hash(Hit hit) {
+        long hash = Hashing.hash64(hit.getApp());
+        hash = Hashing.mix(hash * 31 + Hashing.hash64(hit.getUri()));
+        return Hashing.mix(hash * 31 + Hashing.hash64(hit.getIp()));
+    }
+}
@@ -1,13 +1,24 @@
 package ru.practicum.service;
 
+import ru.practicum.HitCountDto;
 import ru.practicum.HitDto;
+import ru.practicum.SeriesStats;
 import ru.practicum.ViewStats;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface HitService {
 
     HitDto createHit(HitDto hitDto);
 
-    List<ViewStats> getHit(String start, String end, List<String> uris, Boolean unique);
+    void createHits(List<HitDto> hitDtos);
+
+    void createCounts(List<HitCountDto> countDtos);
+
+    void getHit(String start, String end, List<String> uris, Boolean unique, Boolean exact, Consumer<ViewStats> consumer);
+
+    List<SeriesStats> getSeries(String start, String end, List<String> uris, String interval, Boolean unique);
+
+    List<ViewStats> getTop(String app, Integer window, Integer k);
 }
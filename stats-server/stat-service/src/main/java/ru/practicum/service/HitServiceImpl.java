@@ -1,49 +1,399 @@
 package ru.practicum.service;
 
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.HitCountDto;
 import ru.practicum.HitDto;
+import ru.practicum.SeriesStats;
 import ru.practicum.Utils;
 import ru.practicum.ViewStats;
+import ru.practicum.exeption.TooManyRequestsException;
+import ru.practicum.exeption.ValidationException;
 import ru.practicum.mapper.HitMapper;
+import ru.practicum.model.AppUri;
+import ru.practicum.model.BucketRange;
+import ru.practicum.model.Dimension;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.Hit;
+import ru.practicum.model.HitCount;
+import ru.practicum.model.SeriesKey;
 import ru.practicum.repository.HitRepository;
+import ru.practicum.repository.RollupRepository;
+import ru.practicum.segment.SegmentStore;
+import ru.practicum.sketch.HyperLogLog;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Transactional(readOnly = true)
-@RequiredArgsConstructor
 public class HitServiceImpl implements HitService {
+    private static final Comparator<SeriesKey> SERIES_ORDER = Comparator.comparing(SeriesKey::getAppId)
+            .thenComparing(SeriesKey::getUriId)
+            .thenComparing(SeriesKey::getBucket);
+
     private final HitRepository repository;
+    private final RollupRepository rollupRepository;
+    private final DictionaryCache dictionaryCache;
+    private final HitSink hitSink;
+    private final TrendingTracker trendingTracker;
+    private final StatsCache statsCache;
+    private final HotWindow hotWindow;
+    private final HitDeduplicator hitDeduplicator;
+    private final IpRateLimiter ipRateLimiter;
+    private final Compactor compactor;
+    private final ParallelStatsQuery parallelStatsQuery;
+    private final Optional<SegmentStore> segmentStore;
+    private final TransactionTemplate readOnly;
+    private final long maxSeriesBuckets;
+    private final long maxCountHits;
+    private final int maxCountIps;
+
+    public HitServiceImpl(HitRepository repository,
+                          RollupRepository rollupRepository,
+                          DictionaryCache dictionaryCache,
+                          HitSink hitSink,
+                          TrendingTracker trendingTracker,
+                          StatsCache statsCache,
+                          HotWindow hotWindow,
+                          HitDeduplicator hitDeduplicator,
+                          IpRateLimiter ipRateLimiter,
+                          Compactor compactor,
+                          ParallelStatsQuery parallelStatsQuery,
+                          Optional<SegmentStore> segmentStore,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${stats.series.max-buckets:10000}") long maxSeriesBuckets,
+                          @Value("${stats.counts.max-hits:100000}") long maxCountHits,
+                          @Value("${stats.counts.max-ips:10000}") int maxCountIps) {
+        this.repository = repository;
+        this.rollupRepository = rollupRepository;
+        this.dictionaryCache = dictionaryCache;
+        this.hitSink = hitSink;
+        this.trendingTracker = trendingTracker;
+        this.statsCache = statsCache;
+        this.hotWindow = hotWindow;
+        this.hitDeduplicator = hitDeduplicator;
+        this.ipRateLimiter = ipRateLimiter;
+        this.compactor = compactor;
+        this.parallelStatsQuery = parallelStatsQuery;
+        this.segmentStore = segmentStore;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.maxSeriesBuckets = maxSeriesBuckets;
+        this.maxCountHits = maxCountHits;
+        this.maxCountIps = maxCountIps;
+    }
 
-    @Transactional
+    // HitWriter opens its own transaction, the sink must not join the class-level read-only one
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     @Override
     public HitDto createHit(HitDto hitDto) {
-        return HitMapper.mapToHitDto(repository.save(HitMapper.mapToHit(hitDto)));
+        long retryAfter = ipRateLimiter.acquire(hitDto.getIp());
+        if (retryAfter > 0) {
+            throw new TooManyRequestsException("Превышен лимит запросов для ip " + hitDto.getIp(), retryAfter);
+        }
+        Hit hit = toHit(hitDto);
+        List<Hit> hits = hitDeduplicator.filter(List.of(hit));
+        if (!hits.isEmpty()) {
+            hitSink.accept(hits);
+            hitDeduplicator.commit(hits);
+            trendingTracker.record(hits);
+        }
+        return HitMapper.mapToHitDto(hit);
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @Override
+    public void createHits(List<HitDto> hitDtos) {
+        if (hitDtos == null || hitDtos.isEmpty()) {
+            return;
+        }
+        // A batch mixes many visitors, so only the over-limit ones are dropped
+        List<Hit> hits = hitDtos.stream()
+                .filter(hitDto -> ipRateLimiter.acquire(hitDto.getIp()) == 0)
+                .map(this::toHit)
+                .collect(Collectors.toList());
+        hits = hitDeduplicator.filter(hits);
+        if (hits.isEmpty()) {
+            return;
+        }
+        hitSink.accept(hits);
+        hitDeduplicator.commit(hits);
+        trendingTracker.record(hits);
+    }
+
+    // Counts come from a few trusted clients, so neither the limiter nor the deduplicator applies.
+    // They land in the minute rollups and sketches only, exact distinct ips and sub-minute edges do not see them.
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @Override
+    public void createCounts(List<HitCountDto> countDtos) {
+        if (countDtos == null || countDtos.isEmpty()) {
+            return;
+        }
+        long total = 0;
+        for (HitCountDto countDto : countDtos) {
+            validate(countDto);
+            total += countDto.getHits();
+        }
+        // segments unfold every count into single hits, so there the whole request is bounded
+        if (segmentStore.isPresent() && total > maxCountHits) {
+            throw new ValidationException("Слишком много просмотров в запросе, максимум " + maxCountHits);
+        }
+        List<Hit> hits = new ArrayList<>();
+        for (HitCountDto countDto : countDtos) {
+            hits.addAll(segmentStore.isPresent() ? expand(countDto) : HitMapper.mapToHits(countDto));
+        }
+        hitSink.accept(hits);
+        trendingTracker.record(hits);
+    }
+
+    @Override
+    public List<ViewStats> getTop(String app, Integer window, Integer k) {
+        return trendingTracker.top(app, window, k);
     }
 
+    // Parallel slices take their own connections, so the request thread must not hold one while it waits.
+    // Only the reads answered on this thread open a read-only transaction.
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     @Override
-    public List<ViewStats> getHit(String startSt, String endSt, List<String> uris, Boolean unique) {
-        LocalDateTime start = LocalDateTime.parse(startSt, Utils.DATE_FORMATTER);
-        LocalDateTime end = LocalDateTime.parse(endSt, Utils.DATE_FORMATTER);
+    public void getHit(String startSt, String endSt, List<String> uris, Boolean unique, Boolean exact,
+                       Consumer<ViewStats> consumer) {
+        LocalDateTime start = Utils.parseDateTime(startSt);
+        LocalDateTime end = Utils.parseDateTime(endSt);
         if (start.isAfter(end)) {
-            throw new ru.practicum.exeption.ValidationException("Неверно заданы границы диапазона");
+            throw new ValidationException("Неверно заданы границы диапазона");
         }
+        List<Integer> uriIds = uris == null ? null : dictionaryCache.findIds(Dimension.URI, uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return;
+        }
+        if (segmentStore.isPresent()) {
+            segmentStore.get().scan(start, end.plusSeconds(1), uriIds, unique, exact).stream()
+                    .map(this::toViewStats)
+                    .forEach(consumer);
+            return;
+        }
+        LocalDateTime to = end.plusSeconds(1);
+        LocalDateTime horizon = compactor.getHorizon();
         if (!unique) {
-            if (uris == null) {
-                return repository.getHits(start, end);
-            } else {
-                return repository.getHitsUris(start, end, uris);
+            LocalDateTime from = snapFrom(start, horizon, Granularity.MINUTE);
+            to = snapTo(to, horizon, Granularity.MINUTE);
+            BucketRange hot = hotWindow.cover(from, to, Granularity.MINUTE);
+            List<BucketRange> ranges = planOutside(hot, from, to, RollupPlanner::plan);
+            if (hot == null && !statsCache.isEnabled() && !parallelStatsQuery.isWide(ranges)) {
+                List<BucketRange> narrow = ranges;
+                readOnly.executeWithoutResult(status ->
+                        rollupRepository.getHits(narrow, uriIds, count -> consumer.accept(toViewStats(count))));
+                return;
+            }
+            Map<AppUri, Long> hits = hot == null ? new HashMap<>() : hotWindow.getHits(hot, uriIds);
+            if (statsCache.isEnabled()) {
+                getCachedHits(ranges, uriIds).forEach((key, count) -> hits.merge(key, count, Long::sum));
+                ranges = edges(ranges);
+            }
+            getHits(ranges, uriIds).forEach((key, count) -> hits.merge(key, count, Long::sum));
+            toViewStatsByHits(hits).forEach(consumer);
+            return;
+        }
+        // Exact distinct ips need the raw rows, which are gone before the horizon
+        if (!exact || horizon != null && start.isBefore(horizon)) {
+            LocalDateTime from = snapFrom(start, horizon, Granularity.HOUR);
+            to = snapTo(to, horizon, Granularity.HOUR);
+            BucketRange hot = hotWindow.cover(from, to, Granularity.HOUR);
+            List<BucketRange> ranges = planOutside(hot, from, to, RollupPlanner::planSketched);
+            Map<AppUri, HyperLogLog> sketches = hot == null ? new HashMap<>() : hotWindow.getSketches(hot, uriIds);
+            if (statsCache.isEnabled()) {
+                getCachedSketches(ranges, uriIds).forEach((key, sketch) -> sketches.merge(key, sketch.copy(), HyperLogLog::union));
+                ranges = edges(ranges);
             }
-        } else {
-            if (uris == null) {
-                return repository.getHitsUnique(start, end);
-            } else {
-                return repository.getHitsUrisUnique(start, end, uris);
+            getSketches(ranges, uriIds).forEach((key, sketch) -> sketches.merge(key, sketch, HyperLogLog::union));
+            toViewStats(sketches).forEach(consumer);
+            return;
+        }
+        if (parallelStatsQuery.isWide(start, end)) {
+            toViewStatsByHits(parallelStatsQuery.getUniqueHits(start, end, uriIds)).forEach(consumer);
+            return;
+        }
+        readOnly.executeWithoutResult(status -> {
+            try (Stream<HitCount> counts = uriIds == null
+                    ? repository.getHitsUnique(start, end)
+                    : repository.getHitsUrisUnique(start, end, uriIds)) {
+                counts.map(this::toViewStats).forEach(consumer);
+            }
+        });
+    }
 
+    @Override
+    public List<SeriesStats> getSeries(String startSt, String endSt, List<String> uris, String intervalSt, Boolean unique) {
+        LocalDateTime start = Utils.parseDateTime(startSt);
+        LocalDateTime end = Utils.parseDateTime(endSt);
+        if (start.isAfter(end)) {
+            throw new ValidationException("Неверно заданы границы диапазона");
+        }
+        Granularity interval;
+        try {
+            interval = Granularity.valueOf(intervalSt.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Неизвестный интервал: " + intervalSt);
+        }
+        if (interval.getUnit().between(interval.floor(start), end) >= maxSeriesBuckets) {
+            throw new ValidationException("Слишком много интервалов, максимум " + maxSeriesBuckets);
+        }
+        List<Integer> uriIds = null;
+        if (uris != null) {
+            uriIds = dictionaryCache.findIds(Dimension.URI, uris);
+            if (uriIds.isEmpty()) {
+                return List.of();
             }
         }
+        LocalDateTime horizon = compactor.getHorizon();
+        if (!unique) {
+            Map<SeriesKey, Long> series = rollupRepository.getSeries(RollupPlanner.planSeries(
+                    snapFrom(start, horizon, Granularity.MINUTE), snapTo(end.plusSeconds(1), horizon, Granularity.MINUTE),
+                    interval, false), uriIds, interval);
+            return series.entrySet().stream()
+                    .map(entry -> toSeriesStats(entry.getKey(), entry.getValue()))
+                    .collect(Collectors.toList());
+        }
+        Map<SeriesKey, HyperLogLog> series = rollupRepository.getSeriesSketches(RollupPlanner.planSeries(
+                snapFrom(start, horizon, Granularity.HOUR), snapTo(end.plusSeconds(1), horizon, Granularity.HOUR),
+                interval, true), uriIds, interval);
+        return series.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(SERIES_ORDER))
+                .map(entry -> toSeriesStats(entry.getKey(), entry.getValue().estimate()))
+                .collect(Collectors.toList());
+    }
+
+    private SeriesStats toSeriesStats(SeriesKey key, long hits) {
+        return new SeriesStats(dictionaryCache.name(Dimension.APP, key.getAppId()), dictionaryCache.name(Dimension.URI, key.getUriId()),
+                Utils.formatDateTime(key.getBucket()), hits);
+    }
+
+    // Only the bucket-aligned core is cached, the raw edges around it are always read fresh
+    private Map<AppUri, Long> getCachedHits(List<BucketRange> ranges, List<Integer> uriIds) {
+        List<BucketRange> core = core(ranges);
+        if (core.isEmpty()) {
+            return Map.of();
+        }
+        StatsCache.Key key = new StatsCache.Key(uriIds, false, core.get(0).getFrom(), core.get(core.size() - 1).getTo());
+        return statsCache.getOrLoad(key, () -> Collections.unmodifiableMap(getHits(core, uriIds)));
+    }
+
+    private Map<AppUri, HyperLogLog> getCachedSketches(List<BucketRange> ranges, List<Integer> uriIds) {
+        List<BucketRange> core = core(ranges);
+        if (core.isEmpty()) {
+            return Map.of();
+        }
+        StatsCache.Key key = new StatsCache.Key(uriIds, true, core.get(0).getFrom(), core.get(core.size() - 1).getTo());
+        return statsCache.getOrLoad(key, () -> Collections.unmodifiableMap(getSketches(core, uriIds)));
+    }
+
+    private Map<AppUri, Long> getHits(List<BucketRange> ranges, List<Integer> uriIds) {
+        if (parallelStatsQuery.isWide(ranges)) {
+            return parallelStatsQuery.getHits(ranges, uriIds);
+        }
+        Map<AppUri, Long> hits = new HashMap<>();
+        readOnly.executeWithoutResult(status -> rollupRepository.getHits(ranges, uriIds,
+                count -> hits.put(new AppUri(count.getAppId(), count.getUriId()), count.getHits())));
+        return hits;
+    }
+
+    private Map<AppUri, HyperLogLog> getSketches(List<BucketRange> ranges, List<Integer> uriIds) {
+        return parallelStatsQuery.isWide(ranges)
+                ? parallelStatsQuery.getSketches(ranges, uriIds)
+                : readOnly.execute(status -> rollupRepository.getSketches(ranges, uriIds));
+    }
+
+    // The database part of [from, to) around the range answered by the hot window
+    private static List<BucketRange> planOutside(BucketRange hot, LocalDateTime from, LocalDateTime to,
+                                                 BiFunction<LocalDateTime, LocalDateTime, List<BucketRange>> planner) {
+        if (hot == null) {
+            return planner.apply(from, to);
+        }
+        List<BucketRange> ranges = new ArrayList<>(planner.apply(from, hot.getFrom()));
+        ranges.addAll(planner.apply(hot.getTo(), to));
+        return ranges;
+    }
+
+    // Bounds before the compaction horizon are widened to whole buckets of the finest rollup that can answer them
+    private static LocalDateTime snapFrom(LocalDateTime from, LocalDateTime horizon, Granularity granularity) {
+        return horizon != null && from.isBefore(horizon) ? granularity.floor(from) : from;
+    }
+
+    private static LocalDateTime snapTo(LocalDateTime to, LocalDateTime horizon, Granularity granularity) {
+        return horizon != null && to.isBefore(horizon) ? granularity.ceil(to) : to;
+    }
+
+    private static List<BucketRange> core(List<BucketRange> ranges) {
+        return ranges.stream().filter(range -> !range.isRaw()).collect(Collectors.toList());
+    }
+
+    private static List<BucketRange> edges(List<BucketRange> ranges) {
+        return ranges.stream().filter(BucketRange::isRaw).collect(Collectors.toList());
+    }
+
+    private ViewStats toViewStats(HitCount count) {
+        return toViewStats(count.getAppId(), count.getUriId(), count.getHits());
+    }
+
+    private Stream<ViewStats> toViewStatsByHits(Map<AppUri, Long> hits) {
+        return hits.entrySet().stream()
+                .map(entry -> toViewStats(entry.getKey().getAppId(), entry.getKey().getUriId(), entry.getValue()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed());
+    }
+
+    private Stream<ViewStats> toViewStats(Map<AppUri, HyperLogLog> sketches) {
+        return sketches.entrySet().stream()
+                .map(entry -> toViewStats(entry.getKey().getAppId(), entry.getKey().getUriId(), entry.getValue().estimate()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed());
+    }
+
+    private ViewStats toViewStats(int appId, int uriId, long hits) {
+        return new ViewStats(dictionaryCache.name(Dimension.APP, appId), dictionaryCache.name(Dimension.URI, uriId), hits);
+    }
+
+    private Hit toHit(HitDto hitDto) {
+        if (hitDto.getApp() == null || hitDto.getUri() == null || !hitDto.hasTimestamp()) {
+            throw new ValidationException("Не заданы app, uri или timestamp");
+        }
+        return HitMapper.mapToHit(hitDto);
+    }
+
+    private void validate(HitCountDto countDto) {
+        if (countDto.getApp() == null || countDto.getUri() == null || !countDto.hasTimestamp()) {
+            throw new ValidationException("Не заданы app, uri или timestamp");
+        }
+        if (countDto.getHits() == null || countDto.getHits() < 1 || countDto.getHits() > maxCountHits) {
+            throw new ValidationException("Неверно задано число просмотров: " + countDto.getHits());
+        }
+        if (countDto.getIps() != null && countDto.getIps().size() > maxCountIps) {
+            throw new ValidationException("Слишком много ip в счётчике, максимум " + maxCountIps);
+        }
+    }
+
+    // Segments keep one row per hit, so there the count is unfolded back into hits carrying the known ips
+    private List<Hit> expand(HitCountDto countDto) {
+        List<String> ips = countDto.getIps() == null ? List.of() : countDto.getIps();
+        LocalDateTime timestamp = countDto.toDateTime();
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < countDto.getHits(); i++) {
+            hits.add(HitMapper.mapToHit(HitDto.of(countDto.getApp(), countDto.getUri(),
+                    i < ips.size() ? ips.get(i) : null, timestamp)));
+        }
+        return hits;
     }
 }
@@ -0,0 +1,10 @@
+package ru.practicum.service;
+
+import ru.practicum.model.Hit;
+
+import java.util.List;
+
+public interface HitSink {
+
+    void accept(List<Hit> hits);
+}
@@ -0,0 +1,72 @@
+package ru.practicum.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.model.Hit;
+import ru.practicum.repository.HitRepository;
+import ru.practicum.repository.RollupRepository;
+import ru.practicum.segment.SegmentStore;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+@Component
+public class HitWriter {
+    private final HitRepository repository;
+    private final RollupRepository rollupRepository;
+    private final DictionaryCache dictionaryCache;
+    private final StatsCache statsCache;
+    private final HotWindow hotWindow;
+    private final Optional<SegmentStore> segmentStore;
+    private final TransactionTemplate transactionTemplate;
+
+    public HitWriter(HitRepository repository,
+                     RollupRepository rollupRepository,
+                     DictionaryCache dictionaryCache,
+                     StatsCache statsCache,
+                     HotWindow hotWindow,
+                     Optional<SegmentStore> segmentStore,
+                     PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.rollupRepository = rollupRepository;
+        this.dictionaryCache = dictionaryCache;
+        this.statsCache = statsCache;
+        this.hotWindow = hotWindow;
+        this.segmentStore = segmentStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public void write(List<Hit> hits) {
+        write(hits, () -> {
+        });
+    }
+
+    // New names are interned before the write transaction opens, so a writer never holds two pooled connections
+    public void write(List<Hit> hits, Runnable alsoInTransaction) {
+        dictionaryCache.assignIds(hits);
+        transactionTemplate.executeWithoutResult(status -> {
+            writeInTransaction(hits);
+            alsoInTransaction.run();
+        });
+    }
+
+    private void writeInTransaction(List<Hit> hits) {
+        if (segmentStore.isEmpty()) {
+            repository.insertAll(hits.stream().filter(hit -> !hit.isAggregated()).collect(Collectors.toList()));
+        }
+        rollupRepository.increment(hits);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                // appended only once the rollups are committed so a retried batch is not stored twice
+                segmentStore.ifPresent(store -> store.append(hits));
+                statsCache.invalidate(hits);
+                hotWindow.record(hits);
+            }
+        });
+    }
+}
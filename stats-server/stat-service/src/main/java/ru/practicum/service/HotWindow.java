@@ -0,0 +1,346 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.AppUri;
+import ru.practicum.model.BucketRange;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.Hit;
+import ru.practicum.model.SeriesKey;
+import ru.practicum.repository.RollupRepository;
+import ru.practicum.sketch.Hashing;
+import ru.practicum.sketch.HyperLogLog;
+import ru.practicum.sketch.LongCounts;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Minute counts and hour sketches for the last few hours, recorded as batches commit.
+// Only sees the hits this instance writes, so it stays off when the rollups are shared with other writers.
+@Slf4j
+@Component
+public class HotWindow {
+    private static final int MAX_SKIPPED = 4096;
+
+    private final RollupRepository rollupRepository;
+    private final int hours;
+    private final int precision;
+    private final int maxKeys;
+    private final MinuteSlot[] minutes;
+    private final HourSlot[] hourSlots;
+    // Minutes holding committed hits the window did not record, the database answers them instead
+    private final NavigableSet<Long> skipped = new ConcurrentSkipListSet<>();
+    private final Object warmUpLock = new Object();
+    private volatile long skippedFrom = Long.MAX_VALUE;
+    private volatile boolean ready;
+
+    public HotWindow(RollupRepository rollupRepository,
+                     ShardRouter shardRouter,
+                     @Value("${stats.hot.hours:0}") int hours,
+                     @Value("${stats.hot.max-keys:100000}") int maxKeys,
+                     @Value("${stats.unique.relative-error:0.02}") double relativeError) {
+        this.rollupRepository = rollupRepository;
+        if (hours > 0 && shardRouter.isEnabled()) {
+            // Other nodes write hits this one never records
+            log.warn("stats.hot.hours is ignored while stats.shard.nodes is set, queries read the rollups");
+            hours = 0;
+        }
+        this.hours = Math.max(hours, 0);
+        this.maxKeys = maxKeys;
+        this.precision = HyperLogLog.precisionFor(relativeError);
+        // two spare slots so that a hit stamped one bucket ahead never evicts a bucket still in the window
+        this.minutes = new MinuteSlot[this.hours == 0 ? 0 : this.hours * 60 + 2];
+        for (int i = 0; i < minutes.length; i++) {
+            minutes[i] = new MinuteSlot();
+        }
+        this.hourSlots = new HourSlot[this.hours == 0 ? 0 : this.hours + 2];
+        for (int i = 0; i < hourSlots.length; i++) {
+            hourSlots[i] = new HourSlot();
+        }
+    }
+
+    @PostConstruct
+    public void warmUp() {
+        if (hours == 0) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        BucketRange minuteRange = new BucketRange(Granularity.MINUTE, coverageStart(now, Granularity.MINUTE), now.plusMinutes(2));
+        rollupRepository.getSeries(List.of(minuteRange), null, Granularity.MINUTE).forEach((key, hits) -> {
+            minuteSlot(toEpoch(key.getBucket(), ChronoUnit.MINUTES)).counts.add(toKey(key.getAppId(), key.getUriId()), hits);
+        });
+        BucketRange hourRange = new BucketRange(Granularity.HOUR, coverageStart(now, Granularity.HOUR), now.plusHours(2));
+        rollupRepository.getSeriesSketches(List.of(hourRange), null, Granularity.HOUR).forEach((key, sketch) -> {
+            long hour = toEpoch(key.getBucket(), ChronoUnit.HOURS);
+            HourSketch hourSketch = hourSlot(hour).sketch(toKey(key.getAppId(), key.getUriId()), maxKeys);
+            if (hourSketch == null) {
+                skip(hour * 60);
+            } else {
+                hourSketch.merge(sketch, precision);
+            }
+        });
+        synchronized (warmUpLock) {
+            ready = true;
+        }
+        log.info("Hot window warmed up with the last {} hours", hours);
+    }
+
+    public void record(List<Hit> hits) {
+        if (hours == 0) {
+            return;
+        }
+        if (!ready) {
+            // Committed while the rollups were being read, so the warm-up may or may not have seen them
+            synchronized (warmUpLock) {
+                if (!ready) {
+                    hits.forEach(hit -> skip(toEpoch(hit.getTimestamp(), ChronoUnit.MINUTES)));
+                    return;
+                }
+            }
+        }
+        LocalDateTime now = LocalDateTime.now();
+        long minuteFrom = toEpoch(coverageStart(now, Granularity.MINUTE), ChronoUnit.MINUTES);
+        long hourFrom = toEpoch(coverageStart(now, Granularity.HOUR), ChronoUnit.HOURS);
+        long nowMinute = toEpoch(now, ChronoUnit.MINUTES);
+        skipped.headSet(minuteFrom).clear();
+        for (Hit hit : hits) {
+            long minute = toEpoch(hit.getTimestamp(), ChronoUnit.MINUTES);
+            if (minute < minuteFrom) {
+                continue;
+            }
+            if (minute > nowMinute + 1) {
+                // Stamped ahead of the clock, the minute is left to the database once it comes into the window
+                skip(minute);
+                continue;
+            }
+            long key = toKey(hit.getAppId(), hit.getUriId());
+            MinuteSlot minuteSlot = minutes[(int) (minute % minutes.length)];
+            synchronized (minuteSlot) {
+                if (minuteSlot.minute != minute) {
+                    minuteSlot.minute = minute;
+                    minuteSlot.counts.clear();
+                }
+                minuteSlot.counts.add(key, hit.getCount());
+            }
+            long hour = minute / 60;
+            if (hour < hourFrom || hit.getIp() == null) {
+                continue;
+            }
+            HourSlot hourSlot = hourSlots[(int) (hour % hourSlots.length)];
+            boolean recorded;
+            synchronized (hourSlot) {
+                if (hourSlot.hour != hour) {
+                    hourSlot.hour = hour;
+                    hourSlot.sketches.clear();
+                }
+                HourSketch sketch = hourSlot.sketch(key, maxKeys);
+                recorded = sketch != null;
+                if (recorded) {
+                    sketch.add(Hashing.hash64(hit.getIp()), precision);
+                }
+            }
+            if (!recorded) {
+                // Past the key budget the hour is left to the database
+                skip(minute);
+            }
+        }
+    }
+
+    // The part of [from, to) that can be answered from memory, aligned to the given granularity
+    public BucketRange cover(LocalDateTime from, LocalDateTime to, Granularity granularity) {
+        if (!ready) {
+            return null;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime start = granularity.ceil(from);
+        LocalDateTime coverageStart = coverageStart(now, granularity);
+        if (start.isBefore(coverageStart)) {
+            start = coverageStart;
+        }
+        LocalDateTime end = granularity.floor(to);
+        // Nothing later than the minute after the current one is ever recorded
+        LocalDateTime recordedTo = granularity.ceil(Granularity.MINUTE.floor(now).plusMinutes(2));
+        if (end.isAfter(recordedTo)) {
+            end = recordedTo;
+        }
+        long startMinute = toEpoch(start, ChronoUnit.MINUTES);
+        Long firstSkipped = skipped.ceiling(startMinute);
+        long skippedMinute = Math.min(firstSkipped == null ? Long.MAX_VALUE : firstSkipped, skippedFrom);
+        if (skippedMinute != Long.MAX_VALUE) {
+            LocalDateTime skippedBucket = granularity.floor(LocalDateTime.ofEpochSecond(
+                    Math.max(skippedMinute, startMinute) * 60, 0, ZoneOffset.UTC));
+            if (end.isAfter(skippedBucket)) {
+                end = skippedBucket;
+            }
+        }
+        return start.isBefore(end) ? new BucketRange(granularity, start, end) : null;
+    }
+
+    public Map<AppUri, Long> getHits(BucketRange range, List<Integer> uriIds) {
+        Map<AppUri, Long> hits = new HashMap<>();
+        Set<Integer> uriFilter = uriIds == null ? null : new HashSet<>(uriIds);
+        long to = toEpoch(range.getTo(), ChronoUnit.MINUTES);
+        for (long minute = toEpoch(range.getFrom(), ChronoUnit.MINUTES); minute < to; minute++) {
+            MinuteSlot slot = minutes[(int) (minute % minutes.length)];
+            synchronized (slot) {
+                if (slot.minute == minute) {
+                    slot.counts.forEach((key, count) -> {
+                        AppUri appUri = toAppUri(key);
+                        if (uriFilter == null || uriFilter.contains(appUri.getUriId())) {
+                            hits.merge(appUri, count, Long::sum);
+                        }
+                    });
+                }
+            }
+        }
+        return hits;
+    }
+
+    public Map<AppUri, HyperLogLog> getSketches(BucketRange range, List<Integer> uriIds) {
+        Map<AppUri, HyperLogLog> sketches = new HashMap<>();
+        Set<Integer> uriFilter = uriIds == null ? null : new HashSet<>(uriIds);
+        long to = toEpoch(range.getTo(), ChronoUnit.HOURS);
+        for (long hour = toEpoch(range.getFrom(), ChronoUnit.HOURS); hour < to; hour++) {
+            HourSlot slot = hourSlots[(int) (hour % hourSlots.length)];
+            synchronized (slot) {
+                if (slot.hour == hour) {
+                    slot.sketches.forEach((key, sketch) -> {
+                        AppUri appUri = toAppUri(key);
+                        if (uriFilter == null || uriFilter.contains(appUri.getUriId())) {
+                            HyperLogLog merged = sketches.get(appUri);
+                            HyperLogLog copy = sketch.toSketch(precision);
+                            sketches.put(appUri, merged == null ? copy : HyperLogLog.union(merged, copy));
+                        }
+                    });
+                }
+            }
+        }
+        return sketches;
+    }
+
+    private synchronized void skip(long minute) {
+        if (minute >= skippedFrom || !skipped.add(minute) || skipped.size() <= MAX_SKIPPED) {
+            return;
+        }
+        // Past the bound only the earliest skipped minutes are kept, everything from the dropped one on is left to the database
+        skippedFrom = skipped.pollLast();
+        log.warn("Too many skipped minutes, the hot window no longer answers from {} on",
+                LocalDateTime.ofEpochSecond(skippedFrom * 60, 0, ZoneOffset.UTC));
+    }
+
+    private LocalDateTime coverageStart(LocalDateTime now, Granularity granularity) {
+        LocalDateTime floor = granularity.floor(now);
+        return granularity == Granularity.MINUTE ? floor.minusMinutes(hours * 60L - 1) : floor.minusHours(hours - 1L);
+    }
+
+    private MinuteSlot minuteSlot(long minute) {
+        MinuteSlot slot = minutes[(int) (minute % minutes.length)];
+        if (slot.minute != minute) {
+            slot.minute = minute;
+            slot.counts.clear();
+        }
+        return slot;
+    }
+
+    private HourSlot hourSlot(long hour) {
+        HourSlot slot = hourSlots[(int) (hour % hourSlots.length)];
+        if (slot.hour != hour) {
+            slot.hour = hour;
+            slot.sketches.clear();
+        }
+        return slot;
+    }
+
+    private static long toEpoch(LocalDateTime time, ChronoUnit unit) {
+        long seconds = time.toEpochSecond(ZoneOffset.UTC);
+        return unit == ChronoUnit.MINUTES ? Math.floorDiv(seconds, 60) : Math.floorDiv(seconds, 3600);
+    }
+
+    private static long toKey(int appId, int uriId) {
+        return ((long) appId << 32) | (uriId & 0xffffffffL);
+    }
+
+    private static AppUri toAppUri(long key) {
+        return new AppUri((int) (key >>> 32), (int) key);
+    }
+
+    private static final class MinuteSlot {
+        private final LongCounts counts = new LongCounts(16);
+        private long minute = -1;
+    }
+
+    private static final class HourSlot {
+        private final Map<Long, HourSketch> sketches = new HashMap<>();
+        private long hour = -1;
+
+        // Null once the slot holds maxKeys other keys
+        private HourSketch sketch(long key, int maxKeys) {
+            HourSketch sketch = sketches.get(key);
+            if (sketch == null && sketches.size() < maxKeys) {
+                sketch = new HourSketch();
+                sketches.put(key, sketch);
+            }
+            return sketch;
+        }
+    }
+
+    // Keeps the sorted ip hashes until they would take more room than the registers, most keys see only a few ips
+    // in an hour. Adding the kept hashes to a fresh sketch gives exactly the registers the dense form would hold.
+    private static final class HourSketch {
+        private long[] hashes = new long[4];
+        private int size;
+        private HyperLogLog dense;
+
+        private void add(long hash, int precision) {
+            if (dense != null) {
+                dense.addHash(hash);
+                return;
+            }
+            int at = Arrays.binarySearch(hashes, 0, size, hash);
+            if (at >= 0) {
+                return;
+            }
+            int limit = Math.max(1, (1 << precision) / 16);
+            if (size == limit) {
+                dense = toSketch(precision);
+                dense.addHash(hash);
+                hashes = null;
+                return;
+            }
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, Math.min(size * 2, limit));
+            }
+            at = -at - 1;
+            System.arraycopy(hashes, at, hashes, at + 1, size - at);
+            hashes[at] = hash;
+            size++;
+        }
+
+        private void merge(HyperLogLog sketch, int precision) {
+            dense = HyperLogLog.union(toSketch(precision), sketch);
+            hashes = null;
+        }
+
+        private HyperLogLog toSketch(int precision) {
+            if (dense != null) {
+                return dense.copy();
+            }
+            HyperLogLog sketch = new HyperLogLog(precision);
+            for (int i = 0; i < size; i++) {
+                sketch.addHash(hashes[i]);
+            }
+            return sketch;
+        }
+    }
+}
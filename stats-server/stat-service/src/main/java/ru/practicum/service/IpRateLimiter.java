@@ -0,0 +1,135 @@
+package ru.practicum.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.sketch.SpaceSaving;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+// Sliding-window counter per ip: the previous fixed window is weighted by how much of it still overlaps the sliding one.
+// Each ip's state (window id, current and previous counts) is packed into one AtomicLong and updated with CAS.
+@Component
+public class IpRateLimiter {
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final long WINDOW_MASK = (1L << (64 - 2 * COUNT_BITS)) - 1;
+
+    private final boolean enabled;
+    private final long limit;
+    private final long windowMillis;
+    private final Map<String, AtomicLong>[] stripes;
+    private final SpaceSaving<String>[] offenders;
+    private final int offenderCapacity;
+    private final LongAdder rejected = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public IpRateLimiter(@Value("${stats.limit.enabled:false}") boolean enabled,
+                         @Value("${stats.limit.requests:600}") long limit,
+                         @Value("${stats.limit.window:1m}") Duration window,
+                         @Value("${stats.limit.stripes:64}") int stripes,
+                         @Value("${stats.limit.offenders:100}") int offenderCapacity) {
+        this.enabled = enabled;
+        this.limit = Math.min(limit, COUNT_MASK);
+        this.windowMillis = window.toMillis();
+        this.stripes = new Map[stripes];
+        // offenders are striped like the states, so an ip is always counted by the same summary
+        this.offenders = new SpaceSaving[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ConcurrentHashMap<>();
+            this.offenders[i] = new SpaceSaving<>(offenderCapacity);
+        }
+        this.offenderCapacity = offenderCapacity;
+    }
+
+    // Returns 0 when the hit is allowed, otherwise the number of seconds after which the ip may retry
+    public long acquire(String ip) {
+        if (!enabled || ip == null) {
+            return 0;
+        }
+        AtomicLong state = stripe(ip).computeIfAbsent(ip, key -> new AtomicLong());
+        while (true) {
+            long now = System.currentTimeMillis();
+            long window = (now / windowMillis) & WINDOW_MASK;
+            long old = state.get();
+            long current = (old >>> COUNT_BITS) & COUNT_MASK;
+            long previous = old & COUNT_MASK;
+            long stateWindow = old >>> (2 * COUNT_BITS);
+            if (stateWindow != window) {
+                previous = stateWindow == ((window - 1) & WINDOW_MASK) ? current : 0;
+                current = 0;
+            }
+            double overlap = 1 - (double) (now % windowMillis) / windowMillis;
+            if (previous * overlap + current + 1 > limit) {
+                rejected.increment();
+                SpaceSaving<String> summary = offenders[stripeIndex(ip)];
+                synchronized (summary) {
+                    summary.add(ip, 1);
+                }
+                return Math.max(1, (windowMillis - now % windowMillis + 999) / 1000);
+            }
+            long updated = (window << (2 * COUNT_BITS)) | ((current + 1) << COUNT_BITS) | previous;
+            if (state.compareAndSet(old, updated)) {
+                return 0;
+            }
+        }
+    }
+
+    public Map<String, Object> describe() {
+        Map<String, Long> totals = new HashMap<>();
+        for (SpaceSaving<String> summary : offenders) {
+            synchronized (summary) {
+                summary.addTo(totals);
+            }
+        }
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("enabled", enabled);
+        description.put("limit", limit);
+        description.put("window", Duration.ofMillis(windowMillis).toString());
+        description.put("tracked", trackedIps());
+        description.put("rejected", rejected.sum());
+        List<Map<String, Object>> top = SpaceSaving.top(totals, offenderCapacity).stream()
+                .map(entry -> {
+                    Map<String, Object> offender = new LinkedHashMap<>();
+                    offender.put("ip", entry.getKey());
+                    offender.put("rejected", entry.getValue());
+                    return offender;
+                })
+                .collect(Collectors.toList());
+        description.put("offenders", top);
+        return description;
+    }
+
+    // Entries idle for two windows carry no weight any more
+    @Scheduled(fixedDelayString = "${stats.limit.sweep-interval:PT1M}")
+    public void sweep() {
+        long window = (System.currentTimeMillis() / windowMillis) & WINDOW_MASK;
+        for (Map<String, AtomicLong> stripe : stripes) {
+            stripe.values().removeIf(state -> ((window - (state.get() >>> (2 * COUNT_BITS))) & WINDOW_MASK) > 1);
+        }
+    }
+
+    private long trackedIps() {
+        long tracked = 0;
+        for (Map<String, AtomicLong> stripe : stripes) {
+            tracked += stripe.size();
+        }
+        return tracked;
+    }
+
+    private Map<String, AtomicLong> stripe(String ip) {
+        return stripes[stripeIndex(ip)];
+    }
+
+    private int stripeIndex(String ip) {
+        return Math.floorMod(ip.hashCode(), stripes.length);
+    }
+}
@@ -0,0 +1,213 @@
+package ru.practicum.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.exeption.OverloadException;
+import ru.practicum.model.AppUri;
+import ru.practicum.model.BucketRange;
+import ru.practicum.model.Granularity;
+import ru.practicum.repository.HitRepository;
+import ru.practicum.repository.RollupRepository;
+import ru.practicum.sketch.HyperLogLog;
+
+import javax.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+// Wide ranges are cut at day boundaries into contiguous slices, each read in its own read-only transaction on its own connection.
+// Slices are disjoint in time, so counts add up, sketches union and exact distinct ip sets union.
+@Component
+public class ParallelStatsQuery {
+    private final RollupRepository rollupRepository;
+    private final HitRepository hitRepository;
+    private final TransactionTemplate readOnly;
+    private final ThreadPoolExecutor executor;
+    private final int slices;
+    private final Duration minSpan;
+
+    public ParallelStatsQuery(RollupRepository rollupRepository,
+                              HitRepository hitRepository,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${stats.query.parallel.threads:4}") int threads,
+                              @Value("${stats.query.parallel.queue-capacity:64}") int queueCapacity,
+                              @Value("${stats.query.parallel.min-span:P2D}") Duration minSpan) {
+        this.rollupRepository = rollupRepository;
+        this.hitRepository = hitRepository;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.slices = threads;
+        this.minSpan = minSpan;
+        // A full queue runs the slice on the request thread instead of queueing without bound
+        this.executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "stats-query");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public boolean isWide(LocalDateTime from, LocalDateTime to) {
+        return slices > 1 && Duration.between(from, to).compareTo(minSpan) >= 0;
+    }
+
+    public boolean isWide(List<BucketRange> ranges) {
+        if (ranges.isEmpty()) {
+            return false;
+        }
+        LocalDateTime from = ranges.get(0).getFrom();
+        LocalDateTime to = ranges.get(0).getTo();
+        for (BucketRange range : ranges) {
+            from = range.getFrom().isBefore(from) ? range.getFrom() : from;
+            to = range.getTo().isAfter(to) ? range.getTo() : to;
+        }
+        return isWide(from, to);
+    }
+
+    public Map<AppUri, Long> getHits(List<BucketRange> ranges, List<Integer> uriIds) {
+        List<Supplier<Map<AppUri, Long>>> tasks = new ArrayList<>();
+        for (List<BucketRange> slice : slice(ranges, slices)) {
+            tasks.add(() -> {
+                Map<AppUri, Long> hits = new HashMap<>();
+                rollupRepository.getHits(slice, uriIds, count -> hits.put(new AppUri(count.getAppId(), count.getUriId()), count.getHits()));
+                return hits;
+            });
+        }
+        return merge(run(tasks), Long::sum);
+    }
+
+    public Map<AppUri, HyperLogLog> getSketches(List<BucketRange> ranges, List<Integer> uriIds) {
+        List<Supplier<Map<AppUri, HyperLogLog>>> tasks = new ArrayList<>();
+        for (List<BucketRange> slice : slice(ranges, slices)) {
+            tasks.add(() -> rollupRepository.getSketches(slice, uriIds));
+        }
+        return merge(run(tasks), HyperLogLog::union);
+    }
+
+    // The same ip can show up in several days, so each slice returns its ip sets and the sets are united
+    public Map<AppUri, Long> getUniqueHits(LocalDateTime start, LocalDateTime end, List<Integer> uriIds) {
+        // created is stored to the microsecond, so this keeps the inclusive end of the range
+        BucketRange range = new BucketRange(null, start, end.plus(1, ChronoUnit.MICROS));
+        List<Supplier<Map<AppUri, Set<ByteBuffer>>>> tasks = new ArrayList<>();
+        for (List<BucketRange> slice : slice(List.of(range), slices)) {
+            tasks.add(() -> {
+                Map<AppUri, Set<ByteBuffer>> ips = new HashMap<>();
+                for (BucketRange piece : slice) {
+                    hitRepository.getIpsSlice(piece.getFrom(), piece.getTo(), uriIds,
+                            (key, ip) -> ips.computeIfAbsent(key, k -> new HashSet<>()).add(ByteBuffer.wrap(ip)));
+                }
+                return ips;
+            });
+        }
+        Map<AppUri, Set<ByteBuffer>> ips = merge(run(tasks), (left, right) -> {
+            if (left.size() < right.size()) {
+                right.addAll(left);
+                return right;
+            }
+            left.addAll(right);
+            return left;
+        });
+        Map<AppUri, Long> hits = new HashMap<>();
+        ips.forEach((key, set) -> hits.put(key, (long) set.size()));
+        return hits;
+    }
+
+    // Ranges finer than a day are cut at day boundaries, the pieces are dealt out in time order and re-joined per slice
+    static List<List<BucketRange>> slice(List<BucketRange> ranges, int count) {
+        List<BucketRange> pieces = new ArrayList<>();
+        List<BucketRange> days = new ArrayList<>();
+        for (BucketRange range : ranges) {
+            if (range.getGranularity() == Granularity.DAY) {
+                days.add(range);
+                continue;
+            }
+            LocalDateTime from = range.getFrom();
+            while (from.isBefore(range.getTo())) {
+                LocalDateTime next = Granularity.DAY.floor(from).plusDays(1);
+                LocalDateTime to = next.isBefore(range.getTo()) ? next : range.getTo();
+                pieces.add(new BucketRange(range.getGranularity(), from, to));
+                from = to;
+            }
+        }
+        pieces.sort((left, right) -> left.getFrom().compareTo(right.getFrom()));
+        List<List<BucketRange>> slices = new ArrayList<>();
+        int size = Math.max(1, (pieces.size() + count - 1) / count);
+        for (int from = 0; from < pieces.size(); from += size) {
+            slices.add(join(pieces.subList(from, Math.min(from + size, pieces.size()))));
+        }
+        // Day rollups hold one row per uri and day, reading them is cheap enough for a single slice
+        if (!days.isEmpty()) {
+            if (slices.isEmpty()) {
+                slices.add(new ArrayList<>());
+            }
+            slices.get(0).addAll(days);
+        }
+        return slices;
+    }
+
+    private static List<BucketRange> join(List<BucketRange> pieces) {
+        List<BucketRange> joined = new ArrayList<>();
+        for (BucketRange piece : pieces) {
+            BucketRange last = joined.isEmpty() ? null : joined.get(joined.size() - 1);
+            if (last != null && last.getGranularity() == piece.getGranularity() && last.getTo().equals(piece.getFrom())) {
+                joined.set(joined.size() - 1, new BucketRange(last.getGranularity(), last.getFrom(), piece.getTo()));
+            } else {
+                joined.add(piece);
+            }
+        }
+        return joined;
+    }
+
+    private <T> List<T> run(List<Supplier<T>> tasks) {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Supplier<T> task : tasks) {
+            futures.add(executor.submit(() -> readOnly.execute(status -> task.get())));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new OverloadException("Запрос статистики прерван");
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    private static <V> Map<AppUri, V> merge(List<Map<AppUri, V>> parts, BinaryOperator<V> combiner) {
+        Map<AppUri, V> merged = new HashMap<>();
+        for (Map<AppUri, V> part : parts) {
+            part.forEach((key, value) -> merged.merge(key, value, combiner));
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,120 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.repository.PartitionRepository;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Optional;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.partition.enabled", havingValue = "true", matchIfMissing = true)
+public class PartitionManager {
+    private static final String TABLE = "stats";
+    private static final String PREFIX = TABLE + "_p";
+    private static final DateTimeFormatter SUFFIX_FORMATTER = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final PartitionRepository partitionRepository;
+    private final int premakeDays;
+    private final int retentionDays;
+    private final RetentionAction retentionAction;
+    private boolean unpartitionedReported;
+
+    public PartitionManager(PartitionRepository partitionRepository,
+                            @Value("${stats.partition.premake-days:7}") int premakeDays,
+                            @Value("${stats.partition.retention-days:0}") int retentionDays,
+                            @Value("${stats.partition.retention-action:drop}") RetentionAction retentionAction) {
+        this.partitionRepository = partitionRepository;
+        this.premakeDays = premakeDays;
+        this.retentionDays = retentionDays;
+        this.retentionAction = retentionAction;
+    }
+
+    @Scheduled(fixedDelayString = "${stats.partition.check-interval:PT1H}")
+    public void maintain() {
+        if (!partitionRepository.isPartitioned(TABLE)) {
+            // checked every interval, so the warning is logged once rather than on every run
+            if (!unpartitionedReported) {
+                log.warn("Таблица {} не секционирована, управление секциями отключено", TABLE);
+                unpartitionedReported = true;
+            }
+            return;
+        }
+        unpartitionedReported = false;
+        List<String> existing = partitionRepository.getPartitions(TABLE);
+        LocalDate today = LocalDate.now();
+        for (LocalDate day = today; !day.isAfter(today.plusDays(premakeDays)); day = day.plusDays(1)) {
+            String partition = PREFIX + day.format(SUFFIX_FORMATTER);
+            if (!existing.contains(partition)) {
+                partitionRepository.createPartition(TABLE, partition, day, day.plusDays(1));
+                log.info("Создана секция {}", partition);
+            }
+        }
+        if (retentionDays > 0) {
+            LocalDate keepFrom = today.minusDays(retentionDays);
+            if (splitExpiredDefault(keepFrom)) {
+                existing = partitionRepository.getPartitions(TABLE);
+            }
+            expire(existing, keepFrom);
+        }
+    }
+
+    // Rows the default partition holds for expired days, e.g. from before the table was partitioned,
+    // are moved into day partitions so that they expire like any other day
+    private boolean splitExpiredDefault(LocalDate keepFrom) {
+        boolean split = false;
+        Optional<LocalDate> oldest;
+        while ((oldest = partitionRepository.findOldestDefaultDay(TABLE, keepFrom)).isPresent()) {
+            LocalDate day = oldest.get();
+            String partition = PREFIX + day.format(SUFFIX_FORMATTER);
+            if (partitionRepository.exists(partition)) {
+                // a detached partition of that day still holds the name
+                log.warn("Строки за {} остались в секции по умолчанию: таблица {} уже существует", day, partition);
+                break;
+            }
+            partitionRepository.createPartition(TABLE, partition, day, day.plusDays(1));
+            log.info("Строки за {} перенесены из секции по умолчанию в {}", day, partition);
+            split = true;
+        }
+        return split;
+    }
+
+    private void expire(List<String> partitions, LocalDate keepFrom) {
+        for (String partition : partitions) {
+            LocalDate day = dayOf(partition);
+            if (day == null || !day.isBefore(keepFrom)) {
+                continue;
+            }
+            if (retentionAction == RetentionAction.DETACH) {
+                partitionRepository.detachPartition(TABLE, partition);
+                log.info("Секция {} отсоединена", partition);
+            } else {
+                partitionRepository.dropPartition(partition);
+                log.info("Секция {} удалена", partition);
+            }
+        }
+    }
+
+    private static LocalDate dayOf(String partition) {
+        if (!partition.startsWith(PREFIX)) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(partition.substring(PREFIX.length()), SUFFIX_FORMATTER);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    public enum RetentionAction {
+        DROP,
+        DETACH
+    }
+}
@@ -0,0 +1,60 @@
+package ru.practicum.service;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import ru.practicum.model.BucketRange;
+import ru.practicum.model.Granularity;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class RollupPlanner {
+    private static final Granularity[] COARSEST_FIRST = {Granularity.DAY, Granularity.HOUR, Granularity.MINUTE};
+
+    private static final Granularity[] SKETCHED_COARSEST_FIRST = {Granularity.DAY, Granularity.HOUR};
+
+    public static List<BucketRange> plan(LocalDateTime from, LocalDateTime to) {
+        return plan(from, to, COARSEST_FIRST);
+    }
+
+    public static List<BucketRange> planSketched(LocalDateTime from, LocalDateTime to) {
+        return plan(from, to, SKETCHED_COARSEST_FIRST);
+    }
+
+    // Levels coarser than the series interval would merge several of its buckets into one row
+    public static List<BucketRange> planSeries(LocalDateTime from, LocalDateTime to, Granularity interval, boolean sketched) {
+        Granularity[] levels = Arrays.stream(sketched ? SKETCHED_COARSEST_FIRST : COARSEST_FIRST)
+                .filter(level -> level.compareTo(interval) <= 0)
+                .toArray(Granularity[]::new);
+        return plan(from, to, levels);
+    }
+
+    private static List<BucketRange> plan(LocalDateTime from, LocalDateTime to, Granularity[] levels) {
+        List<BucketRange> ranges = new ArrayList<>();
+        plan(from, to, levels, 0, ranges);
+        return ranges;
+    }
+
+    private static void plan(LocalDateTime from, LocalDateTime to, Granularity[] levels, int level, List<BucketRange> ranges) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        if (level == levels.length) {
+            ranges.add(new BucketRange(null, from, to));
+            return;
+        }
+        Granularity granularity = levels[level];
+        LocalDateTime alignedFrom = granularity.ceil(from);
+        LocalDateTime alignedTo = granularity.floor(to);
+        if (!alignedFrom.isBefore(alignedTo)) {
+            plan(from, to, levels, level + 1, ranges);
+            return;
+        }
+        plan(from, alignedFrom, levels, level + 1, ranges);
+        ranges.add(new BucketRange(granularity, alignedFrom, alignedTo));
+        plan(alignedTo, to, levels, level + 1, ranges);
+    }
+}
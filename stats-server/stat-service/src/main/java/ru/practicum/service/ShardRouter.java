@@ -0,0 +1,298 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+import ru.practicum.BinaryHttpMessageConverter;
+import ru.practicum.HitCountDto;
+import ru.practicum.HitDto;
+import ru.practicum.SeriesStats;
+import ru.practicum.Utils;
+import ru.practicum.ViewStats;
+import ru.practicum.exeption.OverloadException;
+import ru.practicum.exeption.PartiallyAppliedException;
+import ru.practicum.exeption.TooManyRequestsException;
+import ru.practicum.sketch.Hashing;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// Every node owns a contiguous range of the (app, uri) hash space: writes go to the owner, reads fan out to all nodes.
+// Ranges are disjoint, so per-shard results are merged by concatenation and a global sort.
+@Slf4j
+@Component
+public class ShardRouter {
+    public static final String FORWARDED_HEADER = "X-Stats-Forwarded";
+
+    private static final ParameterizedTypeReference<List<ViewStats>> VIEW_STATS_LIST = new ParameterizedTypeReference<>() {
+    };
+    private static final ParameterizedTypeReference<List<SeriesStats>> SERIES_STATS_LIST = new ParameterizedTypeReference<>() {
+    };
+    private static final Comparator<ViewStats> STATS_ORDER = Comparator.comparing(ViewStats::getHits).reversed();
+    private static final Comparator<SeriesStats> SERIES_ORDER = Comparator.comparing(SeriesStats::getApp)
+            .thenComparing(SeriesStats::getUri)
+            .thenComparing(SeriesStats::getBucket);
+
+    private final List<String> nodes;
+    private final int self;
+    private final RestTemplate rest;
+    private final ExecutorService executor;
+
+    public ShardRouter(@Value("${stats.shard.nodes:}") List<String> nodes,
+                       @Value("${stats.shard.self:0}") int self,
+                       @Value("${stats.shard.timeout:5s}") Duration timeout,
+                       @Value("${stats.shard.threads:16}") int threads,
+                       RestTemplateBuilder builder) {
+        this.nodes = nodes.stream()
+                .map(String::trim)
+                .filter(node -> !node.isEmpty())
+                .collect(Collectors.toList());
+        this.self = self;
+        if (isEnabled() && (self < 0 || self >= this.nodes.size())) {
+            throw new IllegalStateException("stats.shard.self вне списка узлов: " + self);
+        }
+        this.rest = builder
+                .setConnectTimeout(timeout)
+                .setReadTimeout(timeout)
+                .additionalMessageConverters(new BinaryHttpMessageConverter())
+                .build();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "shard-router");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (isEnabled()) {
+            log.info("Shard {} of {}: {}", self, this.nodes.size(), this.nodes);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return nodes.size() > 1;
+    }
+
+    public boolean isLocal(HitDto hitDto) {
+        return isLocal(hitDto.getApp(), hitDto.getUri());
+    }
+
+    public HitDto forward(HitDto hitDto) {
+        String node = nodes.get(owner(hitDto));
+        try {
+            return rest.exchange(node + Utils.HIT, HttpMethod.POST, new HttpEntity<>(hitDto, forwardedHeaders()), HitDto.class)
+                    .getBody();
+        } catch (HttpClientErrorException.TooManyRequests e) {
+            String retryAfter = e.getResponseHeaders() == null ? null : e.getResponseHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+            throw new TooManyRequestsException("Превышен лимит запросов для ip " + hitDto.getIp(),
+                    retryAfter == null ? 1 : Long.parseLong(retryAfter));
+        } catch (RestClientException e) {
+            throw unavailable(node, e);
+        }
+    }
+
+    // Sends the hits owned by other nodes and stores the ones that belong here.
+    // Shards cannot roll back each other, so once any part is stored a failure elsewhere is reported as non-retryable
+    public void forwardForeign(List<HitDto> hitDtos, Consumer<List<HitDto>> local) {
+        forwardForeign(hitDtos, local, Utils.HITS_BATCH, HitDto::getApp, HitDto::getUri);
+    }
+
+    public void forwardForeignCounts(List<HitCountDto> countDtos, Consumer<List<HitCountDto>> local) {
+        forwardForeign(countDtos, local, Utils.HITS_COUNTS, HitCountDto::getApp, HitCountDto::getUri);
+    }
+
+    private <T> void forwardForeign(List<T> items, Consumer<List<T>> local, String path,
+                                    Function<T, String> app, Function<T, String> uri) {
+        if (!isEnabled() || items == null) {
+            local.accept(items);
+            return;
+        }
+        Map<Boolean, List<T>> byLocality = items.stream()
+                .collect(Collectors.partitioningBy(item -> isLocal(app.apply(item), uri.apply(item))));
+        Map<Integer, List<T>> foreign = byLocality.get(false).stream()
+                .collect(Collectors.groupingBy(item -> owner(app.apply(item), uri.apply(item))));
+        Map<Integer, CompletableFuture<Void>> sent = new HashMap<>();
+        foreign.forEach((owner, batch) -> sent.put(owner, CompletableFuture.runAsync(() -> {
+            String node = nodes.get(owner);
+            try {
+                rest.exchange(node + path, HttpMethod.POST, new HttpEntity<>(batch, forwardedHeaders()), Void.class);
+            } catch (RestClientException e) {
+                throw unavailable(node, e);
+            }
+        }, executor)));
+        int applied = 0;
+        int lost = 0;
+        RuntimeException failure = null;
+        List<T> own = byLocality.get(true);
+        if (!own.isEmpty()) {
+            try {
+                local.accept(own);
+                applied += own.size();
+            } catch (RuntimeException e) {
+                failure = e;
+                lost += own.size();
+            }
+        }
+        for (Map.Entry<Integer, CompletableFuture<Void>> part : sent.entrySet()) {
+            try {
+                join(part.getValue());
+                applied += foreign.get(part.getKey()).size();
+            } catch (RuntimeException e) {
+                failure = failure == null ? e : failure;
+                lost += foreign.get(part.getKey()).size();
+            }
+        }
+        if (failure == null) {
+            return;
+        }
+        if (applied == 0) {
+            throw failure;
+        }
+        log.warn("Batch partially stored: {} saved, {} lost: {}", applied, lost, failure.getMessage());
+        throw new PartiallyAppliedException("Сохранено " + applied + " из " + (applied + lost)
+                + " записей, повтор приведёт к дублям: " + failure.getMessage());
+    }
+
+    public List<ViewStats> getHit(String start, String end, List<String> uris, Boolean unique, Boolean exact,
+                                  Supplier<List<ViewStats>> local) {
+        List<ViewStats> merged = gather(node -> rest.exchange(query(node, Utils.STATS, start, end, uris)
+                        .queryParam("unique", unique)
+                        .queryParam("exact", exact)
+                        .encode().build().toUri(), HttpMethod.GET, binaryRequest(), VIEW_STATS_LIST).getBody(),
+                local);
+        merged.sort(STATS_ORDER);
+        return merged;
+    }
+
+    public List<SeriesStats> getSeries(String start, String end, List<String> uris, String interval, Boolean unique,
+                                       Supplier<List<SeriesStats>> local) {
+        List<SeriesStats> merged = gather(node -> rest.exchange(query(node, Utils.STATS_SERIES, start, end, uris)
+                        .queryParam("interval", interval)
+                        .queryParam("unique", unique)
+                        .encode().build().toUri(), HttpMethod.GET, binaryRequest(), SERIES_STATS_LIST).getBody(),
+                local);
+        merged.sort(SERIES_ORDER);
+        return merged;
+    }
+
+    public List<ViewStats> getTop(String app, Integer window, Integer k, Supplier<List<ViewStats>> local) {
+        List<ViewStats> merged = gather(node -> rest.exchange(UriComponentsBuilder.fromHttpUrl(node)
+                        .path(Utils.STATS_TOP)
+                        .queryParam("app", app)
+                        .queryParam("window", window)
+                        .queryParam("k", k)
+                        .encode().build().toUri(), HttpMethod.GET, binaryRequest(), VIEW_STATS_LIST).getBody(),
+                local);
+        merged.sort(STATS_ORDER);
+        return merged.size() > k ? new ArrayList<>(merged.subList(0, k)) : merged;
+    }
+
+    int owner(HitDto hitDto) {
+        return owner(hitDto.getApp(), hitDto.getUri());
+    }
+
+    // Hits without app or uri stay local and fail validation there
+    private boolean isLocal(String app, String uri) {
+        return !isEnabled() || app == null || uri == null || owner(app, uri) == self;
+    }
+
+    private int owner(String app, String uri) {
+        long hash = Hashing.hash64(app + '\0' + uri);
+        return (int) (((hash >>> 32) * nodes.size()) >>> 32);
+    }
+
+    // Remote calls are started first so the local query overlaps with them
+    private <T> List<T> gather(Function<String, List<T>> remote, Supplier<List<T>> local) {
+        List<CompletableFuture<List<T>>> parts = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            if (i == self) {
+                continue;
+            }
+            String node = nodes.get(i);
+            parts.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return remote.apply(node);
+                } catch (RestClientException e) {
+                    throw unavailable(node, e);
+                }
+            }, executor));
+        }
+        List<T> merged;
+        try {
+            merged = new ArrayList<>(local.get());
+        } catch (RuntimeException e) {
+            parts.forEach(part -> part.cancel(true));
+            throw e;
+        }
+        for (CompletableFuture<List<T>> part : parts) {
+            List<T> result = join(part);
+            if (result != null) {
+                merged.addAll(result);
+            }
+        }
+        return merged;
+    }
+
+    private UriComponentsBuilder query(String node, String path, String start, String end, List<String> uris) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(node)
+                .path(path)
+                .queryParam("start", start)
+                .queryParam("end", end);
+        if (uris != null && !uris.isEmpty()) {
+            builder.queryParam("uris", uris.toArray());
+        }
+        return builder;
+    }
+
+    private HttpHeaders forwardedHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(FORWARDED_HEADER, "true");
+        return headers;
+    }
+
+    private HttpEntity<Void> binaryRequest() {
+        HttpHeaders headers = forwardedHeaders();
+        headers.setAccept(List.of(BinaryHttpMessageConverter.MEDIA_TYPE));
+        return new HttpEntity<>(headers);
+    }
+
+    private OverloadException unavailable(String node, RestClientException e) {
+        log.warn("Shard {} failed: {}", node, e.getMessage());
+        return new OverloadException("Шард " + node + " недоступен");
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.EqualsAndHashCode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.Hit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// Off by default: a query it answers is merged in memory, while an uncached one streams straight from the database
+@Component
+public class StatsCache {
+    private final int maxEntries;
+    private final long openTtlNanos;
+    // Reads may come from a replica that has not replayed the latest commits yet
+    private final long replicaLagNanos;
+    private final Map<Key, Entry> entries;
+    // Closed entries never expire, so a write can only reach the ones ending after it; open ones expire within the ttl
+    private final NavigableMap<LocalDateTime, Set<Key>> closedByTo = new TreeMap<>();
+    private final Map<Key, Entry> open = new HashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+    // Bumped after every commit that touches an already closed bucket
+    private long lateWrites;
+    private long lateWriteAt;
+
+    public StatsCache(MeterRegistry meterRegistry,
+                      @Value("${stats.cache.max-entries:0}") int maxEntries,
+                      @Value("${stats.cache.open-ttl:5s}") Duration openTtl,
+                      @Value("${stats.replica.max-lag:0s}") Duration replicaLag) {
+        this.maxEntries = maxEntries;
+        this.openTtlNanos = openTtl.toNanos();
+        this.replicaLagNanos = replicaLag.toNanos();
+        this.lateWriteAt = System.nanoTime() - replicaLagNanos - 1;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() <= StatsCache.this.maxEntries) {
+                    return false;
+                }
+                unindex(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+        this.hits = Counter.builder("stats.cache.hits").register(meterRegistry);
+        this.misses = Counter.builder("stats.cache.misses").register(meterRegistry);
+        Gauge.builder("stats.cache.size", this, StatsCache::size).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <V> V getOrLoad(Key key, Supplier<V> loader) {
+        long generation;
+        LocalDateTime closedBefore = Granularity.MINUTE.floor(LocalDateTime.now().minusNanos(replicaLagNanos));
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && (entry.closed || entry.expiresAt - System.nanoTime() > 0)) {
+                hits.increment();
+                return (V) entry.value;
+            }
+            generation = lateWrites;
+        }
+        misses.increment();
+        V value = loader.get();
+        boolean closed = !key.to.isAfter(closedBefore);
+        synchronized (this) {
+            if (closed && (generation != lateWrites || System.nanoTime() - lateWriteAt <= replicaLagNanos)) {
+                // a late hit may have been committed after the loader had read this range
+                return value;
+            }
+            Entry entry = new Entry(value, closed, System.nanoTime() + openTtlNanos);
+            Entry replaced = entries.put(key, entry);
+            if (replaced != null) {
+                unindex(key, replaced);
+            }
+            if (closed) {
+                closedByTo.computeIfAbsent(key.to, to -> new HashSet<>()).add(key);
+            } else {
+                open.put(key, entry);
+            }
+        }
+        return value;
+    }
+
+    public void invalidate(List<Hit> batch) {
+        if (!isEnabled() || batch.isEmpty()) {
+            return;
+        }
+        LocalDateTime closedBefore = Granularity.MINUTE.floor(LocalDateTime.now());
+        // a batch touches a handful of minutes, so entries are matched against those instead of every hit
+        NavigableMap<LocalDateTime, Set<Integer>> touched = new TreeMap<>();
+        for (Hit hit : batch) {
+            touched.computeIfAbsent(Granularity.MINUTE.floor(hit.getTimestamp()), minute -> new HashSet<>())
+                    .add(hit.getUriId());
+        }
+        LocalDateTime min = touched.firstKey();
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (min.isBefore(closedBefore)) {
+                lateWrites++;
+                lateWriteAt = now;
+            }
+            // looked up here rather than in entries, where a get would count as an access for the lru order
+            Iterator<Map.Entry<Key, Entry>> openEntries = open.entrySet().iterator();
+            while (openEntries.hasNext()) {
+                Map.Entry<Key, Entry> entry = openEntries.next();
+                if (entry.getValue().expiresAt - now <= 0 || entry.getKey().touches(touched)) {
+                    openEntries.remove();
+                    entries.remove(entry.getKey());
+                }
+            }
+            Iterator<Set<Key>> closedKeys = closedByTo.tailMap(min, false).values().iterator();
+            while (closedKeys.hasNext()) {
+                Set<Key> keys = closedKeys.next();
+                keys.removeIf(key -> key.touches(touched) && entries.remove(key) != null);
+                if (keys.isEmpty()) {
+                    closedKeys.remove();
+                }
+            }
+        }
+    }
+
+    private void unindex(Key key, Entry entry) {
+        if (!entry.closed) {
+            open.remove(key);
+            return;
+        }
+        Set<Key> keys = closedByTo.get(key.to);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            closedByTo.remove(key.to);
+        }
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    @EqualsAndHashCode
+    public static final class Key {
+        // null means all uris
+        private final Set<Integer> uriIds;
+        private final boolean unique;
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+
+        public Key(List<Integer> uriIds, boolean unique, LocalDateTime from, LocalDateTime to) {
+            this.uriIds = uriIds == null ? null : uriIds.stream().collect(Collectors.toCollection(HashSet::new));
+            this.unique = unique;
+            this.from = from;
+            this.to = to;
+        }
+
+        // minutes are matched whole, which can only drop an entry too eagerly, never keep a stale one
+        private boolean touches(NavigableMap<LocalDateTime, Set<Integer>> touched) {
+            for (Map.Entry<LocalDateTime, Set<Integer>> minute : touched.subMap(from.minusMinutes(1), false, to, false)
+                    .entrySet()) {
+                if (uriIds == null || !Collections.disjoint(uriIds, minute.getValue())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final boolean closed;
+        private final long expiresAt;
+
+        private Entry(Object value, boolean closed, long expiresAt) {
+            this.value = value;
+            this.closed = closed;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
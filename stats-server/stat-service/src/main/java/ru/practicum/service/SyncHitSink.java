@@ -0,0 +1,20 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.Hit;
+
+import java.util.List;
+
+@Component
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "sync", matchIfMissing = true)
+@RequiredArgsConstructor
+public class SyncHitSink implements HitSink {
+    private final HitWriter hitWriter;
+
+    @Override
+    public void accept(List<Hit> hits) {
+        hitWriter.write(hits);
+    }
+}
@@ -0,0 +1,187 @@
+package ru.practicum.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.ViewStats;
+import ru.practicum.exeption.ValidationException;
+import ru.practicum.model.Hit;
+import ru.practicum.sketch.SpaceSaving;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// One summary per minute slot, split into stripes by uri so concurrent writers rarely share a lock.
+// A uri always lands in the same stripe, so merging the stripes of a slot is an exact sum.
+// Completed minutes no longer change, so their merged totals are kept per window until the minute turns,
+// and a query only merges the stripes of the current minute into them.
+@Component
+public class TrendingTracker {
+    private static final long SLOT_MILLIS = 60_000;
+
+    private final int capacity;
+    private final int maxWindow;
+    private final int maxApps;
+    private final int stripes;
+    private final Map<String, AppSlots> slotsByApp = new ConcurrentHashMap<>();
+
+    public TrendingTracker(@Value("${stats.top.capacity:1000}") int capacity,
+                           @Value("${stats.top.max-window:60}") int maxWindow,
+                           @Value("${stats.top.max-apps:1000}") int maxApps,
+                           @Value("${stats.top.stripes:8}") int stripes) {
+        this.capacity = capacity;
+        this.maxWindow = maxWindow;
+        this.maxApps = maxApps;
+        this.stripes = stripes;
+    }
+
+    public void record(List<Hit> hits) {
+        long minute = System.currentTimeMillis() / SLOT_MILLIS;
+        for (Hit hit : hits) {
+            if (hit.getCount() == 0) {
+                continue;
+            }
+            AppSlots app = slots(hit.getApp());
+            if (app == null) {
+                continue;
+            }
+            app.lastMinute = minute;
+            Stripe[] slot = app.slots[(int) (minute % maxWindow)];
+            Stripe stripe = slot[Math.floorMod(hit.getUri().hashCode(), slot.length)];
+            synchronized (stripe) {
+                if (stripe.minute != minute) {
+                    stripe.summary.clear();
+                    stripe.minute = minute;
+                }
+                stripe.summary.add(hit.getUri(), hit.getCount());
+            }
+        }
+    }
+
+    public List<ViewStats> top(String app, int window, int k) {
+        if (window < 1 || window > maxWindow) {
+            throw new ValidationException("Окно должно быть от 1 до " + maxWindow + " минут");
+        }
+        if (k < 1 || k > capacity) {
+            throw new ValidationException("k должно быть от 1 до " + capacity);
+        }
+        AppSlots slots = slotsByApp.get(app);
+        if (slots == null) {
+            return List.of();
+        }
+        long minute = System.currentTimeMillis() / SLOT_MILLIS;
+        Closed closed = closed(slots, minute, window);
+        Map<String, Long> current = new HashMap<>();
+        for (Stripe stripe : slots.slots[(int) (minute % maxWindow)]) {
+            synchronized (stripe) {
+                if (stripe.minute == minute) {
+                    stripe.summary.addTo(current);
+                }
+            }
+        }
+        long maxCurrent = current.values().stream().mapToLong(Long::longValue).max().orElse(0);
+        Map<String, Long> candidates = new HashMap<>();
+        // Past the k-th completed total, a uri whose completed count plus the largest current one falls below it
+        // cannot reach the top, and neither can any after it
+        for (int i = 0; i < closed.sorted.size(); i++) {
+            Map.Entry<String, Long> entry = closed.sorted.get(i);
+            if (i >= k && entry.getValue() + maxCurrent < closed.sorted.get(k - 1).getValue()) {
+                break;
+            }
+            candidates.put(entry.getKey(), entry.getValue() + current.getOrDefault(entry.getKey(), 0L));
+        }
+        current.forEach((uri, count) -> candidates.put(uri, closed.totals.getOrDefault(uri, 0L) + count));
+        return SpaceSaving.top(candidates, k).stream()
+                .map(entry -> new ViewStats(app, entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    // Rebuilt on the first query of a window after the minute turns; a writer that read the clock just before
+    // the turn may still add to the previous minute, which then shows up only once that minute leaves the window
+    private Closed closed(AppSlots slots, long minute, int window) {
+        synchronized (slots) {
+            if (slots.closedMinute != minute) {
+                slots.closedByWindow.clear();
+                slots.closedMinute = minute;
+            }
+            Closed closed = slots.closedByWindow.get(window);
+            if (closed == null) {
+                Map<String, Long> totals = new HashMap<>();
+                for (Stripe[] slot : slots.slots) {
+                    for (Stripe stripe : slot) {
+                        synchronized (stripe) {
+                            if (stripe.minute > minute - window && stripe.minute < minute) {
+                                stripe.summary.addTo(totals);
+                            }
+                        }
+                    }
+                }
+                closed = new Closed(totals);
+                slots.closedByWindow.put(window, closed);
+            }
+            return closed;
+        }
+    }
+
+    // Apps without hits for the whole window hold only expired slots
+    @Scheduled(fixedDelayString = "${stats.top.sweep-interval:PT1M}")
+    public void sweep() {
+        long minute = System.currentTimeMillis() / SLOT_MILLIS;
+        slotsByApp.values().removeIf(slots -> slots.lastMinute <= minute - maxWindow);
+    }
+
+    // Apps beyond the limit are not tracked until the sweep frees room
+    private AppSlots slots(String app) {
+        AppSlots slots = slotsByApp.get(app);
+        if (slots != null || slotsByApp.size() >= maxApps) {
+            return slots;
+        }
+        return slotsByApp.computeIfAbsent(app, key -> new AppSlots(newSlots()));
+    }
+
+    private Stripe[][] newSlots() {
+        int stripeCapacity = Math.max(1, (capacity + stripes - 1) / stripes);
+        Stripe[][] slots = new Stripe[maxWindow][stripes];
+        for (int i = 0; i < maxWindow; i++) {
+            for (int j = 0; j < stripes; j++) {
+                slots[i][j] = new Stripe(new SpaceSaving<>(stripeCapacity));
+            }
+        }
+        return slots;
+    }
+
+    private static final class AppSlots {
+        private final Stripe[][] slots;
+        private final Map<Integer, Closed> closedByWindow = new HashMap<>();
+        private long closedMinute = -1;
+        private volatile long lastMinute;
+
+        private AppSlots(Stripe[][] slots) {
+            this.slots = slots;
+        }
+    }
+
+    private static final class Closed {
+        private final Map<String, Long> totals;
+        private final List<Map.Entry<String, Long>> sorted;
+
+        private Closed(Map<String, Long> totals) {
+            this.totals = totals;
+            this.sorted = new ArrayList<>(totals.entrySet());
+            this.sorted.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        }
+    }
+
+    private static final class Stripe {
+        private final SpaceSaving<String> summary;
+        private long minute = -1;
+
+        private Stripe(SpaceSaving<String> summary) {
+            this.summary = summary;
+        }
+    }
+}
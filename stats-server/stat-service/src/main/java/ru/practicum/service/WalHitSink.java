@@ -0,0 +1,227 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.exeption.OverloadException;
+import ru.practicum.model.Hit;
+import ru.practicum.repository.WalCheckpointRepository;
+import ru.practicum.wal.WalCodec;
+import ru.practicum.wal.WalPosition;
+import ru.practicum.wal.WalRecord;
+import ru.practicum.wal.WriteAheadLog;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+// Acknowledges hits once they are fsynced to the local log and applies the log to Postgres in the background
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "wal")
+public class WalHitSink implements HitSink {
+    private static final long MAX_RETRY_BACKOFF_MS = 5_000;
+    private static final int MAX_GROUP = 1024;
+
+    private final HitWriter hitWriter;
+    private final WalCheckpointRepository checkpointRepository;
+    private final MeterRegistry meterRegistry;
+    private final String directory;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final long syncTimeoutNanos;
+    private final long pollIntervalNanos;
+    private final int batchSize;
+    private final BlockingQueue<Append> pending;
+    private final Timer syncTimer;
+    private final Counter rejected;
+    private final Thread writerThread;
+    private final Thread applierThread;
+    private WriteAheadLog wal;
+    private volatile boolean running;
+
+    public WalHitSink(HitWriter hitWriter,
+                      WalCheckpointRepository checkpointRepository,
+                      MeterRegistry meterRegistry,
+                      @Value("${stats.wal.dir:wal}") String directory,
+                      @Value("${stats.wal.segment-size:64MB}") DataSize segmentSize,
+                      @Value("${stats.wal.max-size:1GB}") DataSize maxSize,
+                      @Value("${stats.wal.sync-timeout:1s}") Duration syncTimeout,
+                      @Value("${stats.wal.poll-interval:200ms}") Duration pollInterval,
+                      @Value("${stats.wal.queue-capacity:10000}") int queueCapacity,
+                      @Value("${stats.ingest.batch-size:500}") int batchSize) {
+        this.hitWriter = hitWriter;
+        this.checkpointRepository = checkpointRepository;
+        this.meterRegistry = meterRegistry;
+        this.directory = directory;
+        this.segmentBytes = segmentSize.toBytes();
+        this.maxBytes = maxSize.toBytes();
+        this.syncTimeoutNanos = syncTimeout.toNanos();
+        this.pollIntervalNanos = pollInterval.toNanos();
+        this.batchSize = batchSize;
+        this.pending = new LinkedBlockingQueue<>(queueCapacity);
+        this.syncTimer = Timer.builder("stats.wal.sync").register(meterRegistry);
+        this.rejected = Counter.builder("stats.wal.rejected").register(meterRegistry);
+        this.writerThread = new Thread(this::writeLoop, "wal-writer");
+        this.applierThread = new Thread(this::applyLoop, "wal-applier");
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        wal = new WriteAheadLog(Paths.get(directory), segmentBytes);
+        Gauge.builder("stats.wal.size", wal, WriteAheadLog::size).register(meterRegistry);
+        running = true;
+        writerThread.start();
+        applierThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        writerThread.interrupt();
+        writerThread.join();
+        applierThread.interrupt();
+        applierThread.join();
+        wal.close();
+    }
+
+    @Override
+    public void accept(List<Hit> hits) {
+        Append append = new Append(WalCodec.encode(hits));
+        if (wal.size() > maxBytes || !pending.offer(append)) {
+            rejected.increment();
+            throw new OverloadException("Журнал статистики переполнен");
+        }
+        try {
+            append.done.get(syncTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // a 503 is only honest if the writer will never pick the append up; once it is taken, wait for the fsync
+            if (append.taken.compareAndSet(false, true)) {
+                rejected.increment();
+                throw new OverloadException("Журнал статистики не успевает записывать на диск");
+            }
+            awaitTaken(append);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Не удалось записать хиты в журнал", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Запись хитов в журнал прервана", e);
+        }
+    }
+
+    private void awaitTaken(Append append) {
+        try {
+            append.done.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Не удалось записать хиты в журнал", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Запись хитов в журнал прервана", e);
+        }
+    }
+
+    // Group commit: everything queued while the previous fsync ran goes out with a single fsync
+    private void writeLoop() {
+        List<Append> group = new ArrayList<>();
+        while (running || !pending.isEmpty()) {
+            try {
+                Append head = pending.poll(pollIntervalNanos, TimeUnit.NANOSECONDS);
+                if (head == null) {
+                    continue;
+                }
+                group.add(head);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            pending.drainTo(group, MAX_GROUP - 1);
+            // appends whose caller already got a 503 must not reach the log
+            group.removeIf(append -> !append.taken.compareAndSet(false, true));
+            if (group.isEmpty()) {
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                wal.append(group.stream().map(append -> append.payload).collect(Collectors.toList()));
+                syncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                group.forEach(append -> append.done.complete(null));
+            } catch (IOException e) {
+                log.error("Ошибка записи {} пакетов в журнал", group.size(), e);
+                group.forEach(append -> append.done.completeExceptionally(e));
+            }
+            group.clear();
+        }
+    }
+
+    private void applyLoop() {
+        WalPosition position = null;
+        long backoff = 100;
+        while (running) {
+            try {
+                if (position == null) {
+                    position = checkpointRepository.find(wal.getId())
+                            .or(() -> wal.isLegacy() ? checkpointRepository.claimLegacy(wal.getId()) : Optional.empty())
+                            .orElse(wal.first());
+                    log.info("Применение журнала статистики с позиции {}", position);
+                }
+                List<WalRecord> records = wal.read(position, batchSize);
+                if (records.isEmpty()) {
+                    TimeUnit.NANOSECONDS.sleep(pollIntervalNanos);
+                    continue;
+                }
+                List<Hit> batch = new ArrayList<>();
+                WalPosition next = position;
+                for (WalRecord record : records) {
+                    batch.addAll(WalCodec.decode(record.getPayload()));
+                    next = record.getNext();
+                    if (batch.size() >= batchSize) {
+                        break;
+                    }
+                }
+                WalPosition checkpoint = next;
+                hitWriter.write(batch, () -> checkpointRepository.save(wal.getId(), checkpoint));
+                position = checkpoint;
+                wal.deleteBefore(checkpoint.getSegment());
+                backoff = 100;
+            } catch (InterruptedException e) {
+                // stop() interrupts the applier; the loop re-checks running
+            } catch (RuntimeException | IOException e) {
+                log.warn("Ошибка применения журнала, повтор через {} мс", backoff, e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ignored) {
+                    // stop() interrupts the applier; the loop re-checks running
+                }
+                backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MS);
+            }
+        }
+    }
+
+    private static final class Append {
+        private final byte[] payload;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final AtomicBoolean taken = new AtomicBoolean();
+
+        private Append(byte[] payload) {
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ru.practicum.sketch;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free Bloom filter over 64-bit hashes, probing with double hashing
+public class BloomFilter {
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+    private final long expectedItems;
+    private final LongAdder insertions = new LongAdder();
+
+    public BloomFilter(long expectedItems, double falsePositiveRate) {
+        if (expectedItems < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Bloom filter needs expectedItems >= 1 and a rate in (0, 1)");
+        }
+        long optimalBits = (long) Math.ceil(-expectedItems * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.expectedItems = expectedItems;
+        this.words = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64));
+        this.bits = words.length() * 64L;
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expectedItems * Math.log(2)));
+    }
+
+    // Returns true when the hash was possibly present already, false when this call added it
+    public boolean put(long hash) {
+        long h1 = hash;
+        long h2 = Hashing.mix(hash) | 1;
+        boolean present = true;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long old = words.getAndUpdate(word, w -> w | mask);
+            if ((old & mask) == 0) {
+                present = false;
+            }
+        }
+        if (!present) {
+            insertions.increment();
+        }
+        return present;
+    }
+
+    // Inserted items relative to the capacity the filter was sized for, the false positive rate holds up to 1
+    public double fillRatio() {
+        return (double) insertions.sum() / expectedItems;
+    }
+
+    public boolean mightContain(long hash) {
+        long h1 = hash;
+        long h2 = Hashing.mix(hash) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bits);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,166 @@
+package ru.practicum.sketch;
+
+public class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    private static final byte DENSE = 0;
+    private static final byte SPARSE = 1;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("HyperLogLog precision must be in [4, 16]: " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public static int precisionFor(double relativeError) {
+        if (relativeError <= 0 || relativeError >= 1) {
+            throw new IllegalArgumentException("HyperLogLog relative error must be in (0, 1): " + relativeError);
+        }
+        int precision = (int) Math.ceil(Math.log(Math.pow(1.04 / relativeError, 2)) / Math.log(2));
+        return Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, precision));
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public double relativeError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    public void add(String value) {
+        addHash(Hashing.hash64(value));
+    }
+
+    public void add(byte[] value) {
+        addHash(Hashing.hash64(value));
+    }
+
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        long rest = (hash << precision) | (1L << (precision - 1));
+        update(index, (byte) (Long.numberOfLeadingZeros(rest) + 1));
+    }
+
+    public HyperLogLog merge(HyperLogLog other) {
+        if (other.precision == precision) {
+            for (int i = 0; i < registers.length; i++) {
+                update(i, other.registers[i]);
+            }
+        } else if (other.precision > precision) {
+            foldInto(other, this);
+        } else {
+            throw new IllegalArgumentException("Cannot merge a coarser sketch: " + other.precision + " < " + precision);
+        }
+        return this;
+    }
+
+    public HyperLogLog copy() {
+        HyperLogLog copy = new HyperLogLog(precision);
+        System.arraycopy(registers, 0, copy.registers, 0, registers.length);
+        return copy;
+    }
+
+    public static HyperLogLog union(HyperLogLog left, HyperLogLog right) {
+        return left.precision >= right.precision ? right.merge(left) : left.merge(right);
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public byte[] toBytes() {
+        int nonZero = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                nonZero++;
+            }
+        }
+        if (3 * nonZero < registers.length) {
+            byte[] bytes = new byte[2 + 3 * nonZero];
+            bytes[0] = SPARSE;
+            bytes[1] = (byte) precision;
+            int pos = 2;
+            for (int i = 0; i < registers.length; i++) {
+                if (registers[i] != 0) {
+                    bytes[pos++] = (byte) (i >>> 8);
+                    bytes[pos++] = (byte) i;
+                    bytes[pos++] = registers[i];
+                }
+            }
+            return bytes;
+        }
+        byte[] bytes = new byte[2 + registers.length];
+        bytes[0] = DENSE;
+        bytes[1] = (byte) precision;
+        System.arraycopy(registers, 0, bytes, 2, registers.length);
+        return bytes;
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        HyperLogLog sketch = new HyperLogLog(bytes[1]);
+        if (bytes[0] == SPARSE) {
+            for (int pos = 2; pos < bytes.length; pos += 3) {
+                int index = ((bytes[pos] & 0xff) << 8) | (bytes[pos + 1] & 0xff);
+                sketch.update(index, bytes[pos + 2]);
+            }
+        } else {
+            System.arraycopy(bytes, 2, sketch.registers, 0, sketch.registers.length);
+        }
+        return sketch;
+    }
+
+    private void update(int index, byte rank) {
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    // The index bits dropped by a coarser sketch become the leading bits of the rank
+    private static void foldInto(HyperLogLog fine, HyperLogLog coarse) {
+        int shift = fine.precision - coarse.precision;
+        for (int i = 0; i < fine.registers.length; i++) {
+            byte rank = fine.registers[i];
+            if (rank == 0) {
+                continue;
+            }
+            int dropped = i & ((1 << shift) - 1);
+            byte folded = dropped == 0
+                    ? (byte) (rank + shift)
+                    : (byte) (Integer.numberOfLeadingZeros(dropped) - (32 - shift) + 1);
+            coarse.update(i >>> shift, folded);
+        }
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
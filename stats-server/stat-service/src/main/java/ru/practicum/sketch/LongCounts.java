@@ -0,0 +1,80 @@
+package ru.practicum.sketch;
+
+import java.util.Arrays;
+
+// Open-addressing long -> long counter on two primitive arrays; key 0 marks an empty cell
+public class LongCounts {
+    private long[] keys;
+    private long[] counts;
+    private int size;
+
+    public LongCounts(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.counts = new long[capacity];
+    }
+
+    public void add(long key, long delta) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+        int mask = keys.length - 1;
+        int i = index(key, mask);
+        while (keys[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == key) {
+            counts[i] += delta;
+            return;
+        }
+        keys[i] = key;
+        counts[i] = delta;
+        if (++size * 4 > keys.length * 3) {
+            grow();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                visitor.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new long[oldCounts.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = index(oldKeys[j], mask);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                counts[i] = oldCounts[j];
+            }
+        }
+    }
+
+    private static int index(long key, int mask) {
+        return (int) Hashing.mix(key) & mask;
+    }
+
+    public interface Visitor {
+        void accept(long key, long count);
+    }
+}
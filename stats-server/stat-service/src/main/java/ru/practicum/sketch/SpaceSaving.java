@@ -0,0 +1,77 @@
+package ru.practicum.sketch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+public class SpaceSaving<T> {
+    private static final Comparator<Counter<?>> BY_COUNT = Comparator.<Counter<?>>comparingLong(c -> c.count)
+            .thenComparingLong(c -> c.sequence);
+
+    private final int capacity;
+    private final Map<T, Counter<T>> counters = new HashMap<>();
+    private final TreeSet<Counter<T>> byCount = new TreeSet<>(BY_COUNT);
+    private long sequence;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void add(T item, long count) {
+        Counter<T> counter = counters.get(item);
+        if (counter == null) {
+            if (counters.size() < capacity) {
+                counter = new Counter<>(item, 0, sequence++);
+            } else {
+                Counter<T> min = byCount.pollFirst();
+                counters.remove(min.item);
+                counter = new Counter<>(item, min.count, sequence++);
+            }
+            counters.put(item, counter);
+        } else {
+            byCount.remove(counter);
+        }
+        counter.count += count;
+        byCount.add(counter);
+    }
+
+    public void clear() {
+        counters.clear();
+        byCount.clear();
+    }
+
+    public void addTo(Map<T, Long> totals) {
+        for (Counter<T> counter : counters.values()) {
+            totals.merge(counter.item, counter.count, Long::sum);
+        }
+    }
+
+    public static <T> List<Map.Entry<T, Long>> top(Map<T, Long> totals, int k) {
+        PriorityQueue<Map.Entry<T, Long>> heap = new PriorityQueue<>(k + 1, Map.Entry.comparingByValue());
+        for (Map.Entry<T, Long> entry : totals.entrySet()) {
+            heap.add(entry);
+            if (heap.size() > k) {
+                heap.poll();
+            }
+        }
+        List<Map.Entry<T, Long>> top = new ArrayList<>(heap);
+        top.sort(Map.Entry.<T, Long>comparingByValue().reversed());
+        return top;
+    }
+
+    private static final class Counter<T> {
+        private final T item;
+        private long count;
+        private final long sequence;
+
+        private Counter(T item, long count, long sequence) {
+            this.item = item;
+            this.count = count;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ru.practicum.wal;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import ru.practicum.model.Hit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class WalCodec {
+    // set on the ip length byte of a client-side count, which is followed by its weight
+    private static final int AGGREGATED = 0x80;
+
+    public static byte[] encode(List<Hit> hits) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(hits.size() * 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(hits.size());
+            for (Hit hit : hits) {
+                out.writeUTF(hit.getApp());
+                out.writeUTF(hit.getUri());
+                int ipLength = hit.getIp() == null ? 0 : hit.getIp().length;
+                out.writeByte(hit.isAggregated() ? ipLength | AGGREGATED : ipLength);
+                if (ipLength > 0) {
+                    out.write(hit.getIp());
+                }
+                if (hit.isAggregated()) {
+                    out.writeLong(hit.getCount());
+                }
+                out.writeLong(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(hit.getTimestamp().getNano());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<Hit> decode(byte[] record) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            int size = in.readInt();
+            List<Hit> hits = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Hit hit = new Hit();
+                hit.setApp(in.readUTF());
+                hit.setUri(in.readUTF());
+                int flags = in.readUnsignedByte();
+                int ipLength = flags & ~AGGREGATED;
+                if (ipLength > 0) {
+                    byte[] ip = new byte[ipLength];
+                    in.readFully(ip);
+                    hit.setIp(ip);
+                }
+                if ((flags & AGGREGATED) != 0) {
+                    hit.setAggregated(true);
+                    hit.setCount(in.readLong());
+                }
+                hit.setTimestamp(LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC));
+                hits.add(hit);
+            }
+            return hits;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ru.practicum.wal;
+
+import lombok.Data;
+
+import java.util.Comparator;
+
+@Data
+public class WalPosition implements Comparable<WalPosition> {
+    private static final Comparator<WalPosition> ORDER = Comparator.comparingLong(WalPosition::getSegment)
+            .thenComparingLong(WalPosition::getOffset);
+
+    private final long segment;
+
+    private final long offset;
+
+    @Override
+    public int compareTo(WalPosition other) {
+        return ORDER.compare(this, other);
+    }
+}
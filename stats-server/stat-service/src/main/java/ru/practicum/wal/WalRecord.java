@@ -0,0 +1,13 @@
+package ru.practicum.wal;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class WalRecord {
+    private final byte[] payload;
+
+    // position right after this record, i.e. the checkpoint once it is applied
+    private final WalPosition next;
+}
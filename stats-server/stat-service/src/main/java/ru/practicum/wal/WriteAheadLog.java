@@ -0,0 +1,226 @@
+package ru.practicum.wal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Append-only log of length and CRC framed records, rolled over into numbered segment files.
+// One thread appends and one thread reads; a reader never goes past the last fsynced record.
+@Slf4j
+public class WriteAheadLog implements Closeable {
+    private static final String SUFFIX = ".wal";
+    private static final String ID_FILE = "wal.id";
+    private static final int RECORD_HEADER = 2 * Integer.BYTES;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final AtomicLong size = new AtomicLong();
+    private final long firstSegment;
+    private final String id;
+    private final boolean legacy;
+    private FileChannel writer;
+    private long writerSegment;
+    private FileChannel reader;
+    private long readerSegment = -1;
+    private volatile WalPosition durable;
+
+    public WriteAheadLog(Path directory, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        List<Long> segments = listSegments();
+        Path idFile = directory.resolve(ID_FILE);
+        this.legacy = !Files.exists(idFile) && !segments.isEmpty();
+        this.id = Files.exists(idFile) ? Files.readString(idFile).trim() : createId(idFile);
+        for (long segment : segments) {
+            size.addAndGet(Files.size(segmentPath(segment)));
+        }
+        // a torn record at the end of the previous run stays behind in its own segment and is skipped on read
+        this.writerSegment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+        this.firstSegment = segments.isEmpty() ? writerSegment : segments.get(0);
+        this.writer = openWriter(writerSegment);
+        this.durable = new WalPosition(writerSegment, 0);
+    }
+
+    // Stable for the directory, so that each WAL keeps its own checkpoint in a shared database
+    public String getId() {
+        return id;
+    }
+
+    // The directory held segments before it was given an id, from when the checkpoint was a single shared row
+    public boolean isLegacy() {
+        return legacy;
+    }
+
+    public WalPosition first() {
+        return new WalPosition(firstSegment, 0);
+    }
+
+    public long size() {
+        return size.get();
+    }
+
+    public void append(List<byte[]> payloads) throws IOException {
+        try {
+            write(payloads);
+        } catch (IOException e) {
+            // whatever part of the group reached the file is now behind a segment boundary, where reads skip it
+            try {
+                writer.close();
+                writer = openWriter(++writerSegment);
+                durable = new WalPosition(writerSegment, 0);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    private void write(List<byte[]> payloads) throws IOException {
+        for (byte[] payload : payloads) {
+            if (writer.position() > 0 && writer.position() + RECORD_HEADER + payload.length > segmentBytes) {
+                writer.force(false);
+                writer.close();
+                writer = openWriter(++writerSegment);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + payload.length);
+            buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+            while (buffer.hasRemaining()) {
+                writer.write(buffer);
+            }
+            size.addAndGet(RECORD_HEADER + payload.length);
+        }
+        writer.force(false);
+        durable = new WalPosition(writerSegment, writer.position());
+    }
+
+    public List<WalRecord> read(WalPosition from, int maxRecords) throws IOException {
+        List<WalRecord> records = new ArrayList<>();
+        WalPosition position = from;
+        while (records.size() < maxRecords) {
+            WalPosition limit = durable;
+            long segment = position.getSegment();
+            if (segment > limit.getSegment()) {
+                break;
+            }
+            boolean sealed = segment < limit.getSegment();
+            Path path = segmentPath(segment);
+            long end = sealed ? (Files.exists(path) ? Files.size(path) : -1) : limit.getOffset();
+            WalRecord record = end < 0 ? null : readRecord(segment, position.getOffset(), end);
+            if (record != null) {
+                records.add(record);
+                position = record.getNext();
+            } else if (sealed) {
+                if (end >= 0 && position.getOffset() < end) {
+                    log.warn("Пропущен повреждённый хвост сегмента WAL {} с позиции {}", path, position.getOffset());
+                }
+                position = new WalPosition(segment + 1, 0);
+            } else {
+                break;
+            }
+        }
+        return records;
+    }
+
+    public void deleteBefore(long segment) throws IOException {
+        for (long existing : listSegments()) {
+            if (existing >= segment) {
+                break;
+            }
+            if (existing == readerSegment) {
+                reader.close();
+                readerSegment = -1;
+            }
+            Path path = segmentPath(existing);
+            long bytes = Files.size(path);
+            Files.delete(path);
+            size.addAndGet(-bytes);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    private WalRecord readRecord(long segment, long offset, long end) throws IOException {
+        if (offset + RECORD_HEADER > end) {
+            return null;
+        }
+        if (readerSegment != segment) {
+            if (reader != null) {
+                reader.close();
+            }
+            reader = FileChannel.open(segmentPath(segment), StandardOpenOption.READ);
+            readerSegment = segment;
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        readFully(header, offset);
+        int length = header.getInt(0);
+        if (length < 0 || offset + RECORD_HEADER + length > end) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(payload, offset + RECORD_HEADER);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        if ((int) crc.getValue() != header.getInt(Integer.BYTES)) {
+            return null;
+        }
+        return new WalRecord(payload.array(), new WalPosition(segment, offset + RECORD_HEADER + length));
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (reader.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of WAL segment " + readerSegment);
+            }
+        }
+    }
+
+    private FileChannel openWriter(long segment) throws IOException {
+        return FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private String createId(Path idFile) throws IOException {
+        String created = UUID.randomUUID().toString();
+        Path temp = directory.resolve(ID_FILE + ".tmp");
+        Files.writeString(temp, created);
+        Files.move(temp, idFile, StandardCopyOption.ATOMIC_MOVE);
+        return created;
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> list = Files.list(directory)) {
+            return list.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%020d%s", segment, SUFFIX));
+    }
+}
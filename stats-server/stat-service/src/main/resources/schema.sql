@@ -1,7 +1,160 @@
+CREATE TABLE IF NOT EXISTS apps (
+  id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  name VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS uris (
+  id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  name VARCHAR(512) NOT NULL UNIQUE
+);
+
+-- Moves a stats table from the old VARCHAR app/uri/ip layout onto the dictionaries and binary ips
+DO '
+DECLARE
+  bad_ip VARCHAR;
+BEGIN
+  IF EXISTS (SELECT 1 FROM information_schema.columns
+             WHERE table_schema = current_schema() AND table_name = ''stats'' AND column_name = ''app'') THEN
+    INSERT INTO apps (name) SELECT DISTINCT app FROM stats WHERE app IS NOT NULL ON CONFLICT (name) DO NOTHING;
+    INSERT INTO uris (name) SELECT DISTINCT uri FROM stats WHERE uri IS NOT NULL ON CONFLICT (name) DO NOTHING;
+    ALTER TABLE stats ADD COLUMN app_id INT, ADD COLUMN uri_id INT, ADD COLUMN ip_bytes BYTEA;
+    UPDATE stats s SET app_id = a.id FROM apps a WHERE a.name = s.app;
+    UPDATE stats s SET uri_id = u.id FROM uris u WHERE u.name = s.uri;
+    -- Both families are stored as IpMapper stores them, the bare address bytes (4 for IPv4 and IPv4-mapped IPv6,
+    -- 16 otherwise) that inet_send prefixes with family, mask and length. A value that is not a plain address
+    -- stops the migration rather than being lost.
+    SELECT ip INTO bad_ip FROM stats WHERE ip IS NOT NULL AND ip !~ ''^[0-9A-Fa-f:.]+$'' LIMIT 1;
+    IF bad_ip IS NOT NULL THEN
+      RAISE EXCEPTION ''stats.ip holds a value that is not an ip address: %'', bad_ip;
+    END IF;
+    UPDATE stats SET ip_bytes = CASE
+        WHEN ip::inet << ''::ffff:0.0.0.0/96''::inet THEN substring(inet_send(ip::inet) FROM 17)
+        ELSE substring(inet_send(ip::inet) FROM 5)
+      END
+    WHERE ip IS NOT NULL;
+    ALTER TABLE stats DROP COLUMN app, DROP COLUMN uri, DROP COLUMN ip;
+    ALTER TABLE stats RENAME COLUMN ip_bytes TO ip;
+  END IF;
+  IF EXISTS (SELECT 1 FROM information_schema.columns
+             WHERE table_schema = current_schema() AND table_name = ''stats_minute'' AND column_name = ''app'') THEN
+    DROP TABLE stats_minute, stats_hour, stats_day;
+  END IF;
+END';
+
+-- A stats table from before partitioning becomes the default partition of a new partitioned stats, without copying.
+-- Its rows are moved into day partitions as those are created or expired. The identity sequence goes away with the
+-- identity, so its position is carried over to a standalone sequence.
+DO '
+DECLARE
+  last_id BIGINT;
+BEGIN
+  IF EXISTS (SELECT 1 FROM pg_class WHERE oid = to_regclass(''stats'') AND relkind = ''r'') THEN
+    ALTER TABLE stats RENAME TO stats_default;
+    ALTER INDEX IF EXISTS idx_stats_created RENAME TO stats_default_created_idx;
+    IF to_regclass(''stats_id_seq'') IS NOT NULL THEN
+      SELECT last_value INTO last_id FROM stats_id_seq;
+    END IF;
+    SELECT greatest(last_id, max(id), 1) INTO last_id FROM stats_default;
+    ALTER TABLE stats_default ALTER COLUMN id DROP IDENTITY IF EXISTS;
+    ALTER TABLE stats_default ALTER COLUMN id DROP DEFAULT;
+    CREATE SEQUENCE IF NOT EXISTS stats_id_seq;
+    PERFORM setval(''stats_id_seq'', last_id);
+    CREATE TABLE stats (
+      id BIGINT NOT NULL DEFAULT nextval(''stats_id_seq''),
+      app_id INT,
+      uri_id INT,
+      ip BYTEA,
+      created TIMESTAMP WITHOUT TIME ZONE
+    ) PARTITION BY RANGE (created);
+    ALTER TABLE stats ATTACH PARTITION stats_default DEFAULT;
+  END IF;
+END';
+
+CREATE SEQUENCE IF NOT EXISTS stats_id_seq;
+
 CREATE TABLE IF NOT EXISTS stats (
-  id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
-  app VARCHAR(255),
-  uri VARCHAR(512),
-  ip VARCHAR(15),
+  id BIGINT NOT NULL DEFAULT nextval('stats_id_seq'),
+  app_id INT,
+  uri_id INT,
+  ip BYTEA,
+  created TIMESTAMP WITHOUT TIME ZONE
+) PARTITION BY RANGE (created);
+
+DO '
+BEGIN
+  IF EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = ''stats''::regclass) THEN
+    CREATE TABLE IF NOT EXISTS stats_default PARTITION OF stats DEFAULT;
+  END IF;
+END';
+
+CREATE INDEX IF NOT EXISTS idx_stats_created ON stats (created);
+
+CREATE TABLE IF NOT EXISTS stats_minute (
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  app_id INT NOT NULL,
+  uri_id INT NOT NULL,
+  hits BIGINT NOT NULL,
+  CONSTRAINT pk_stats_minute PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS stats_hour (
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  app_id INT NOT NULL,
+  uri_id INT NOT NULL,
+  hits BIGINT NOT NULL,
+  sketch BYTEA,
+  CONSTRAINT pk_stats_hour PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS stats_day (
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  app_id INT NOT NULL,
+  uri_id INT NOT NULL,
+  hits BIGINT NOT NULL,
+  sketch BYTEA,
+  CONSTRAINT pk_stats_day PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS stats_archive (
+  id BIGINT NOT NULL,
+  app_id INT,
+  uri_id INT,
+  ip BYTEA,
   created TIMESTAMP WITHOUT TIME ZONE
 );
+
+CREATE TABLE IF NOT EXISTS stats_compaction (
+  id INT PRIMARY KEY,
+  horizon TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
+
+-- The checkpoint used to be a single row with id 1; it is kept aside until the WAL directory it belongs to claims it
+DO '
+BEGIN
+  IF EXISTS (SELECT 1 FROM information_schema.columns
+             WHERE table_schema = current_schema() AND table_name = ''wal_checkpoint'' AND column_name = ''id'') THEN
+    ALTER TABLE wal_checkpoint RENAME TO wal_checkpoint_legacy;
+    ALTER TABLE wal_checkpoint_legacy RENAME CONSTRAINT wal_checkpoint_pkey TO wal_checkpoint_legacy_pkey;
+  END IF;
+END';
+
+CREATE TABLE IF NOT EXISTS wal_checkpoint (
+  wal_id VARCHAR(36) PRIMARY KEY,
+  segment BIGINT NOT NULL,
+  position BIGINT NOT NULL
+);
+
+INSERT INTO stats_minute (bucket, app_id, uri_id, hits)
+SELECT date_trunc('minute', created), app_id, uri_id, count(*) FROM stats
+WHERE NOT EXISTS (SELECT 1 FROM stats_minute) AND app_id IS NOT NULL AND uri_id IS NOT NULL AND created IS NOT NULL
+GROUP BY date_trunc('minute', created), app_id, uri_id;
+
+INSERT INTO stats_hour (bucket, app_id, uri_id, hits)
+SELECT date_trunc('hour', created), app_id, uri_id, count(*) FROM stats
+WHERE NOT EXISTS (SELECT 1 FROM stats_hour) AND app_id IS NOT NULL AND uri_id IS NOT NULL AND created IS NOT NULL
+GROUP BY date_trunc('hour', created), app_id, uri_id;
+
+INSERT INTO stats_day (bucket, app_id, uri_id, hits)
+SELECT date_trunc('day', created), app_id, uri_id, count(*) FROM stats
+WHERE NOT EXISTS (SELECT 1 FROM stats_day) AND app_id IS NOT NULL AND uri_id IS NOT NULL AND created IS NOT NULL
+GROUP BY date_trunc('day', created), app_id, uri_id;
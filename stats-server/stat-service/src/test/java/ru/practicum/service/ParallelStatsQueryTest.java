@@ -0,0 +1,98 @@
+package ru.practicum.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.model.BucketRange;
+import ru.practicum.model.Granularity;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelStatsQueryTest {
+    private static final LocalDateTime DAY = LocalDateTime.of(2022, 9, 6, 0, 0);
+
+    @Test
+    void rawRangeIsCutAtDayBoundariesIntoContiguousSlices() {
+        BucketRange raw = new BucketRange(null, DAY.plusHours(10), DAY.plusDays(4).plusHours(3));
+        List<List<BucketRange>> slices = ParallelStatsQuery.slice(List.of(raw), 2);
+
+        assertEquals(2, slices.size());
+        assertEquals(List.of(range(null, DAY.plusHours(10), DAY.plusDays(3))), ranges(slices.get(0)));
+        assertEquals(List.of(range(null, DAY.plusDays(3), DAY.plusDays(4).plusHours(3))), ranges(slices.get(1)));
+    }
+
+    @Test
+    void slicesCoverTheRangesExactlyOnce() {
+        List<BucketRange> ranges = List.of(
+                new BucketRange(Granularity.MINUTE, DAY.minusMinutes(30), DAY),
+                new BucketRange(Granularity.HOUR, DAY, DAY.plusDays(5).plusHours(6)),
+                new BucketRange(null, DAY.plusDays(5).plusHours(6), DAY.plusDays(5).plusHours(6).plusMinutes(7)));
+        List<List<BucketRange>> slices = ParallelStatsQuery.slice(ranges, 4);
+
+        assertTrue(slices.size() <= 4);
+        List<BucketRange> pieces = slices.stream().flatMap(List::stream)
+                .sorted((left, right) -> left.getFrom().compareTo(right.getFrom()))
+                .collect(Collectors.toList());
+        assertEquals(DAY.minusMinutes(30), pieces.get(0).getFrom());
+        for (int i = 1; i < pieces.size(); i++) {
+            assertEquals(pieces.get(i - 1).getTo(), pieces.get(i).getFrom());
+        }
+        assertEquals(DAY.plusDays(5).plusHours(6).plusMinutes(7), pieces.get(pieces.size() - 1).getTo());
+    }
+
+    @Test
+    void piecesStayWithinOneGranularity() {
+        List<BucketRange> ranges = List.of(
+                new BucketRange(Granularity.HOUR, DAY.plusHours(20), DAY.plusDays(1).plusHours(2)),
+                new BucketRange(Granularity.MINUTE, DAY.plusDays(1).plusHours(2), DAY.plusDays(1).plusHours(2).plusMinutes(5)));
+        List<List<BucketRange>> slices = ParallelStatsQuery.slice(ranges, 1);
+
+        assertEquals(1, slices.size());
+        assertEquals(List.of(
+                range(Granularity.HOUR, DAY.plusHours(20), DAY.plusDays(1).plusHours(2)),
+                range(Granularity.MINUTE, DAY.plusDays(1).plusHours(2), DAY.plusDays(1).plusHours(2).plusMinutes(5))),
+                ranges(slices.get(0)));
+    }
+
+    @Test
+    void dayRollupsGoToTheFirstSlice() {
+        BucketRange days = new BucketRange(Granularity.DAY, DAY, DAY.plusDays(30));
+        BucketRange hours = new BucketRange(Granularity.HOUR, DAY.plusDays(30), DAY.plusDays(32));
+        List<List<BucketRange>> slices = ParallelStatsQuery.slice(List.of(days, hours), 2);
+
+        assertEquals(2, slices.size());
+        assertEquals(List.of(
+                range(Granularity.HOUR, DAY.plusDays(30), DAY.plusDays(31)),
+                range(Granularity.DAY, DAY, DAY.plusDays(30))), ranges(slices.get(0)));
+        assertEquals(List.of(range(Granularity.HOUR, DAY.plusDays(31), DAY.plusDays(32))), ranges(slices.get(1)));
+    }
+
+    @Test
+    void onlyDayRollupsMakeOneSlice() {
+        BucketRange days = new BucketRange(Granularity.DAY, DAY, DAY.plusDays(30));
+        List<List<BucketRange>> slices = ParallelStatsQuery.slice(List.of(days), 4);
+
+        assertEquals(1, slices.size());
+        assertEquals(List.of(range(Granularity.DAY, DAY, DAY.plusDays(30))), ranges(slices.get(0)));
+    }
+
+    @Test
+    void moreSlicesThanDaysGivesOneSlicePerDay() {
+        BucketRange raw = new BucketRange(null, DAY, DAY.plusDays(2));
+        List<List<BucketRange>> slices = ParallelStatsQuery.slice(List.of(raw), 8);
+
+        assertEquals(2, slices.size());
+    }
+
+    // BucketRange has no equals, so ranges are compared by their string form
+    private static String range(Granularity granularity, LocalDateTime from, LocalDateTime to) {
+        return new BucketRange(granularity, from, to).toString();
+    }
+
+    private static List<String> ranges(List<BucketRange> ranges) {
+        return ranges.stream().map(BucketRange::toString).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,64 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    @Test
+    void putReportsWhetherTheHashWasSeen() {
+        BloomFilter filter = new BloomFilter(1_000, 0.01);
+        long hash = Hashing.hash64("10.0.0.1");
+        assertFalse(filter.mightContain(hash));
+        assertFalse(filter.put(hash));
+        assertTrue(filter.mightContain(hash));
+        assertTrue(filter.put(hash));
+    }
+
+    @Test
+    void hasNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(Hashing.hash64("ip-" + i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain(Hashing.hash64("ip-" + i)));
+        }
+    }
+
+    @Test
+    void falsePositiveRateHoldsAtCapacity() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(Hashing.hash64("seen-" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(Hashing.hash64("unseen-" + i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000, () -> "false positive rate too high");
+    }
+
+    @Test
+    void fillRatioCountsOnlyNewInsertions() {
+        BloomFilter filter = new BloomFilter(100, 0.01);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 50; i++) {
+                filter.put(Hashing.hash64("ip-" + i));
+            }
+        }
+        assertEquals(0.5, filter.fillRatio(), 0.02);
+    }
+
+    @Test
+    void rejectsInvalidSizing() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(100, 1));
+    }
+}
@@ -0,0 +1,94 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+    @Test
+    void estimateStaysWithinTheRelativeError() {
+        HyperLogLog sketch = new HyperLogLog(14);
+        for (int i = 0; i < 100_000; i++) {
+            sketch.add("10.0." + i);
+        }
+        assertWithin(100_000, sketch.estimate(), 3 * sketch.relativeError());
+    }
+
+    @Test
+    void repeatedValuesDoNotChangeTheEstimate() {
+        HyperLogLog sketch = new HyperLogLog(12);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 1_000; i++) {
+                sketch.add("ip-" + i);
+            }
+        }
+        assertWithin(1_000, sketch.estimate(), 3 * sketch.relativeError());
+    }
+
+    @Test
+    void foldingAFineSketchMatchesACoarseSketchOfTheSameValues() {
+        HyperLogLog fine = new HyperLogLog(14);
+        HyperLogLog coarse = new HyperLogLog(10);
+        for (int i = 0; i < 50_000; i++) {
+            fine.add("ip-" + i);
+            coarse.add("ip-" + i);
+        }
+        HyperLogLog folded = new HyperLogLog(10).merge(fine);
+        assertArrayEquals(coarse.toBytes(), folded.toBytes());
+    }
+
+    @Test
+    void unionOfDisjointSketchesCountsBothSides() {
+        HyperLogLog left = new HyperLogLog(12);
+        HyperLogLog right = new HyperLogLog(14);
+        for (int i = 0; i < 20_000; i++) {
+            left.add("left-" + i);
+            right.add("right-" + i);
+        }
+        HyperLogLog union = HyperLogLog.union(left.copy(), right.copy());
+        assertEquals(12, union.getPrecision());
+        assertWithin(40_000, union.estimate(), 3 * union.relativeError());
+        assertArrayEquals(union.toBytes(), HyperLogLog.union(right.copy(), left.copy()).toBytes());
+    }
+
+    @Test
+    void unionOfOverlappingSketchesCountsSharedValuesOnce() {
+        HyperLogLog left = new HyperLogLog(12);
+        HyperLogLog right = new HyperLogLog(12);
+        for (int i = 0; i < 20_000; i++) {
+            left.add("ip-" + i);
+            right.add("ip-" + (i + 10_000));
+        }
+        HyperLogLog union = HyperLogLog.union(left, right);
+        assertWithin(30_000, union.estimate(), 3 * union.relativeError());
+    }
+
+    @Test
+    void mergingACoarserSketchIsRejected() {
+        HyperLogLog fine = new HyperLogLog(12);
+        assertThrows(IllegalArgumentException.class, () -> fine.merge(new HyperLogLog(10)));
+    }
+
+    @Test
+    void sparseAndDenseEncodingsRoundTrip() {
+        HyperLogLog sparse = new HyperLogLog(12);
+        sparse.add("only");
+        HyperLogLog dense = new HyperLogLog(12);
+        for (int i = 0; i < 10_000; i++) {
+            dense.add("ip-" + i);
+        }
+        assertTrue(sparse.toBytes().length < 100);
+        assertArrayEquals(sparse.toBytes(), HyperLogLog.fromBytes(sparse.toBytes()).toBytes());
+        assertEquals(2 + 4096, dense.toBytes().length);
+        assertArrayEquals(dense.toBytes(), HyperLogLog.fromBytes(dense.toBytes()).toBytes());
+    }
+
+    private static void assertWithin(long expected, long actual, double relativeError) {
+        assertTrue(Math.abs(actual - expected) <= expected * relativeError,
+                () -> "estimate " + actual + " is off " + expected + " by more than " + relativeError);
+    }
+}
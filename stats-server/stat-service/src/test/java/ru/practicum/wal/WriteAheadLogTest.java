@@ -0,0 +1,143 @@
+package ru.practicum.wal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteAheadLogTest {
+    private static final long SEGMENT_BYTES = 1 << 20;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackWhatWasAppended() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(directory, SEGMENT_BYTES)) {
+            wal.append(payloads("a", "b"));
+            wal.append(payloads("c"));
+            List<WalRecord> records = wal.read(wal.first(), 10);
+            assertEquals(List.of("a", "b", "c"), texts(records));
+            assertEquals(List.of(), wal.read(records.get(2).getNext(), 10));
+        }
+    }
+
+    @Test
+    void idSurvivesReopenAndOnlyOldSegmentsMarkALegacyDirectory() throws IOException {
+        String id;
+        try (WriteAheadLog wal = new WriteAheadLog(directory, SEGMENT_BYTES)) {
+            id = wal.getId();
+            assertFalse(wal.isLegacy());
+            wal.append(payloads("a"));
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(directory, SEGMENT_BYTES)) {
+            assertEquals(id, wal.getId());
+            assertFalse(wal.isLegacy());
+        }
+        Files.delete(directory.resolve("wal.id"));
+        try (WriteAheadLog wal = new WriteAheadLog(directory, SEGMENT_BYTES)) {
+            assertTrue(wal.isLegacy());
+            assertNotEquals(id, wal.getId());
+        }
+    }
+
+    @Test
+    void readStopsAtMaxRecordsAndResumesFromNext() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(directory, SEGMENT_BYTES)) {
+            wal.append(payloads("a", "b", "c"));
+            List<WalRecord> first = wal.read(wal.first(), 2);
+            assertEquals(List.of("a", "b"), texts(first));
+            assertEquals(List.of("c"), texts(wal.read(first.get(1).getNext(), 2)));
+        }
+    }
+
+    @Test
+    void recordsSpanSegmentRollover() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 64)) {
+            for (int i = 0; i < 10; i++) {
+                wal.append(payloads("record-" + i));
+            }
+            List<WalRecord> records = wal.read(wal.first(), 100);
+            assertEquals(10, records.size());
+            assertEquals("record-9", texts(records).get(9));
+        }
+    }
+
+    @Test
+    void tornTailOfThePreviousRunIsSkippedOnRecovery() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(directory, SEGMENT_BYTES)) {
+            wal.append(payloads("a", "b", "c"));
+        }
+        Path segment = onlySegment();
+        byte[] bytes = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(bytes, bytes.length - 1));
+
+        try (WriteAheadLog wal = new WriteAheadLog(directory, SEGMENT_BYTES)) {
+            wal.append(payloads("d"));
+            assertEquals(List.of("a", "b", "d"), texts(wal.read(wal.first(), 10)));
+        }
+    }
+
+    @Test
+    void corruptedLastRecordIsSkippedOnRecovery() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(directory, SEGMENT_BYTES)) {
+            wal.append(payloads("a", "b"));
+        }
+        Path segment = onlySegment();
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(segment, bytes);
+
+        try (WriteAheadLog wal = new WriteAheadLog(directory, SEGMENT_BYTES)) {
+            wal.append(payloads("c"));
+            assertEquals(List.of("a", "c"), texts(wal.read(wal.first(), 10)));
+        }
+    }
+
+    @Test
+    void deleteBeforeDropsAppliedSegments() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 64)) {
+            for (int i = 0; i < 10; i++) {
+                wal.append(payloads("record-" + i));
+            }
+            List<WalRecord> records = wal.read(wal.first(), 100);
+            WalPosition last = records.get(records.size() - 1).getNext();
+            long before = wal.size();
+            wal.deleteBefore(last.getSegment());
+            assertTrue(wal.size() < before);
+            assertEquals(List.of(), wal.read(last, 10));
+        }
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.filter(path -> path.toString().endsWith(".wal")).collect(Collectors.toList());
+            assertEquals(1, segments.size());
+            return segments.get(0);
+        }
+    }
+
+    private static List<byte[]> payloads(String... texts) {
+        return Arrays.stream(texts)
+                .map(text -> text.getBytes(StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> texts(List<WalRecord> records) {
+        return records.stream()
+                .map(record -> new String(record.getPayload(), StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
+    }
+}